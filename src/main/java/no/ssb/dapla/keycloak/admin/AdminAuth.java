@@ -0,0 +1,71 @@
+package no.ssb.dapla.keycloak.admin;
+
+import org.keycloak.Config;
+import org.keycloak.models.AdminRoles;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.Constants;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.services.managers.AppAuthManager;
+import org.keycloak.services.managers.AuthenticationManager;
+
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.NotAuthorizedException;
+
+/**
+ * Authorization of the Dapla admin endpoints.
+ */
+class AdminAuth {
+
+    private AdminAuth() {}
+
+    /**
+     * Authenticate the request's bearer token and require one of the given roles of the realm's realm-management
+     * client
+     *
+     * @return the realm
+     */
+    static RealmModel requireRole(KeycloakSession session, String... allowedRoles) {
+        AuthenticationManager.AuthResult auth = new AppAuthManager.BearerTokenAuthenticator(session).authenticate();
+        if (auth == null) {
+            throw new NotAuthorizedException("Bearer");
+        }
+
+        RealmModel realm = session.getContext().getRealm();
+        ClientModel realmManagement = realm.getClientByClientId(Constants.REALM_MANAGEMENT_CLIENT_ID);
+        if (realmManagement == null) {
+            throw new ForbiddenException("Realm has no " + Constants.REALM_MANAGEMENT_CLIENT_ID + " client");
+        }
+        for (String allowedRole : allowedRoles) {
+            RoleModel role = realmManagement.getRole(allowedRole);
+            if (role != null && auth.getUser().hasRole(role)) {
+                return realm;
+            }
+        }
+        throw new ForbiddenException("Requires one of the roles " + String.join(", ", allowedRoles));
+    }
+
+    /**
+     * Authenticate the request's bearer token against the admin (master) realm and require its admin role, for
+     * operations that affect state shared by all realms
+     *
+     * @return the realm of the request
+     */
+    static RealmModel requireAdminRealmAdmin(KeycloakSession session) {
+        RealmModel adminRealm = session.realms().getRealmByName(Config.getAdminRealm());
+        AuthenticationManager.AuthResult auth = adminRealm == null
+                ? null
+                : new AppAuthManager.BearerTokenAuthenticator(session).setRealm(adminRealm).authenticate();
+        if (auth == null) {
+            throw new NotAuthorizedException("Bearer");
+        }
+
+        RoleModel admin = adminRealm.getRole(AdminRoles.ADMIN);
+        if (admin == null || !auth.getUser().hasRole(admin)) {
+            throw new ForbiddenException("Requires the " + AdminRoles.ADMIN + " role of the " + adminRealm.getName() + " realm");
+        }
+        return session.getContext().getRealm();
+    }
+
+}
@@ -0,0 +1,212 @@
+package no.ssb.dapla.keycloak.admin;
+
+import no.ssb.dapla.keycloak.mappers.teams.TeamsAndGroupsMapper;
+import no.ssb.dapla.keycloak.mappers.teams.TeamsMapper;
+import no.ssb.dapla.keycloak.services.teamapi.TeamApiCache;
+import no.ssb.dapla.keycloak.services.teamapi.TeamApiCacheWarmer;
+import no.ssb.dapla.keycloak.services.teamapi.TeamApiExecutor;
+import no.ssb.dapla.keycloak.services.teamapi.TeamApiRefreshScheduler;
+import no.ssb.dapla.keycloak.services.teamapi.TeamApiStats;
+import org.jboss.logging.Logger;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.ClientScopeModel;
+import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.RealmModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Inspects, warms and flushes the Team API caches used by the Dapla team mappers of a realm.
+ *
+ * Caches are kept per Team API config, not per realm, so a cache is shared by every realm whose mappers use the
+ * same config. Stats include lookups made for other realms, and flushing or warming a cache affects them too.
+ * Warm-ups are tracked per realm, as the realm only determines which caches are warmed.
+ */
+public class DaplaCacheAdmin {
+    private static final Logger log = Logger.getLogger(DaplaCacheAdmin.class);
+
+    /** Max number of users in a single warm-up */
+    public static final int MAX_WARM_UP_USERS = 10_000;
+
+    private static final Map<String, WarmUp> WARM_UPS = new ConcurrentHashMap<>();
+
+    public enum WarmUpState { RUNNING, COMPLETED, FAILED }
+
+    private static final Set<String> TEAM_MAPPER_IDS = Set.of(TeamsMapper.PROVIDER_ID, TeamsAndGroupsMapper.PROVIDER_ID);
+
+    private final RealmModel realm;
+
+    public DaplaCacheAdmin(RealmModel realm) {
+        this.realm = realm;
+    }
+
+    /**
+     * The caches of the Team APIs used by the realm's team mappers, ordered by Team API URL. A Team API has one
+     * cache per distinct configuration. Caches are only included once they have been used.
+     */
+    List<TeamApiCache> caches() {
+        return teamMappers()
+                .flatMap(model -> TeamsMapper.teamApiUrls(model).stream())
+                .distinct()
+                .sorted()
+                .flatMap(url -> TeamApiCache.existing(url).stream())
+                .toList();
+    }
+
+    private Stream<ProtocolMapperModel> teamMappers() {
+        return Stream.concat(
+                        realm.getClientsStream().flatMap(ClientModel::getProtocolMappersStream),
+                        realm.getClientScopesStream().flatMap(ClientScopeModel::getProtocolMappersStream))
+                .filter(model -> TEAM_MAPPER_IDS.contains(model.getProtocolMapper()));
+    }
+
+    public List<CacheStats> stats() {
+        long now = System.currentTimeMillis();
+        List<CacheStats> stats = new ArrayList<>();
+        for (TeamApiCache cache : caches()) {
+            TeamApiStats s = cache.stats();
+            Long oldestFetchedAt = cache.oldestFetchedAt();
+            stats.add(new CacheStats(cache.config().teamApiUrl(), cache.config().settings(), cache.size(),
+                    s.getLookups(), s.getHitRate(), s.getEvictions(), s.getExpirations(), cache.estimatedBytes(),
+                    oldestFetchedAt == null ? null : (now - oldestFetchedAt) / 1000));
+        }
+        return stats;
+    }
+
+    public FlushResult flushUser(String user) {
+        int flushed = 0;
+        for (TeamApiCache cache : caches()) {
+            if (cache.get(user) != null) {
+                flushed++;
+            }
+            cache.invalidate(user);
+        }
+        return new FlushResult(flushed);
+    }
+
+    public FlushResult flushTeam(String team) {
+        int flushed = 0;
+        for (TeamApiCache cache : caches()) {
+            flushed += cache.invalidateTeam(team);
+        }
+        return new FlushResult(flushed);
+    }
+
+    public FlushResult flushAll() {
+        int flushed = 0;
+        for (TeamApiCache cache : caches()) {
+            flushed += cache.size();
+            cache.invalidateAll();
+        }
+        return new FlushResult(flushed);
+    }
+
+    /**
+     * Start loading the given users into every cache of the realm in the background, unless a warm-up of the realm
+     * is already running. The caches are resolved before returning, as the realm must not be read once the request's
+     * session has closed.
+     *
+     * @return the status of the running warm-up
+     */
+    public WarmUpStatus startWarmUp(List<String> users, int concurrency) {
+        if (users.size() > MAX_WARM_UP_USERS) {
+            throw new IllegalArgumentException("At most " + MAX_WARM_UP_USERS + " users can be warmed up at a time");
+        }
+        return WARM_UPS.compute(realm.getId(), (realmId, warmUp) -> {
+            if (warmUp != null && !warmUp.result.isDone()) {
+                return warmUp;
+            }
+            List<String> usersToWarmUp = List.copyOf(users);
+            List<TeamApiCache> caches = caches();
+            CompletableFuture<List<WarmUpResult>> result = CompletableFuture.supplyAsync(
+                    () -> warmUp(caches, usersToWarmUp, concurrency), TeamApiExecutor.get());
+            result.whenComplete((results, failure) -> {
+                if (failure != null) {
+                    log.warn("Cache warm-up of realm " + realmId + " failed", failure);
+                }
+            });
+            return new WarmUp(usersToWarmUp.size(), result);
+        }).status();
+    }
+
+    /**
+     * @return the status of the latest warm-up of the realm, or null if none has been started
+     */
+    public WarmUpStatus warmUpStatus() {
+        WarmUp warmUp = WARM_UPS.get(realm.getId());
+        return warmUp == null ? null : warmUp.status();
+    }
+
+    /**
+     * Load the given users into every cache of the realm, with bounded concurrency per cache. Blocks until all
+     * users have been loaded.
+     */
+    public List<WarmUpResult> warmUp(List<String> users, int concurrency) {
+        return warmUp(caches(), users, concurrency);
+    }
+
+    private static List<WarmUpResult> warmUp(List<TeamApiCache> caches, List<String> users, int concurrency) {
+        List<WarmUpResult> results = new ArrayList<>();
+        for (TeamApiCache cache : caches) {
+            TeamApiRefreshScheduler.Refresher loader = cache.loader();
+            if (loader != null) {
+                results.add(new WarmUpResult(cache.config().teamApiUrl(), cache.config().settings(),
+                        TeamApiCacheWarmer.warmUp(loader, users, concurrency)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @param teamApiUrl the Team API URL
+     * @param settings the cache's Team API configuration, apart from the URL
+     * @param size number of cached users
+     * @param lookups number of lookups
+     * @param hitRate fraction of lookups served from cache
+     * @param evictions number of unexpired entries evicted to make room for new ones
+     * @param expirations number of expired entries removed to make room for new ones
+     * @param estimatedBytes rough estimate of the heap used by the entries
+     * @param snapshotAgeSeconds age of the oldest entry, or null if the cache is empty
+     */
+    public record CacheStats(String teamApiUrl, String settings, int size, long lookups, double hitRate, long evictions,
+                             long expirations, long estimatedBytes, Long snapshotAgeSeconds) {}
+
+    /**
+     * @param teamApiUrl the Team API URL
+     * @param settings the cache's Team API configuration, apart from the URL
+     * @param result the outcome of warming the cache
+     */
+    public record WarmUpResult(String teamApiUrl, String settings, TeamApiCacheWarmer.WarmUpResult result) {}
+
+    /**
+     * @param state state of the warm-up
+     * @param users number of users to warm up
+     * @param results the outcome per cache, once completed
+     */
+    public record WarmUpStatus(WarmUpState state, int users, List<WarmUpResult> results) {}
+
+    private record WarmUp(int users, CompletableFuture<List<WarmUpResult>> result) {
+
+        WarmUpStatus status() {
+            if (!result.isDone()) {
+                return new WarmUpStatus(WarmUpState.RUNNING, users, List.of());
+            }
+            if (result.isCompletedExceptionally()) {
+                return new WarmUpStatus(WarmUpState.FAILED, users, List.of());
+            }
+            return new WarmUpStatus(WarmUpState.COMPLETED, users, result.join());
+        }
+    }
+
+    /**
+     * @param flushed number of removed entries
+     */
+    public record FlushResult(int flushed) {}
+
+}
@@ -0,0 +1,113 @@
+package no.ssb.dapla.keycloak.admin;
+
+import no.ssb.dapla.keycloak.services.teamapi.TeamApiCacheWarmer;
+import org.keycloak.models.AdminRoles;
+import org.keycloak.models.KeycloakSession;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.List;
+
+/**
+ * Admin endpoint for the Dapla mapper caches, at /realms/{realm}/dapla-cache.
+ *
+ * Team API caches are shared by every realm whose mappers use the same Team API config, so flushing or warming
+ * them affects other realms too. These operations therefore require a bearer token for a user with the admin role
+ * of the admin (master) realm. Read-only operations require a bearer token for a user in the realm with the
+ * realm-admin or view-realm role of the realm-management client, and report the shared caches, including lookups
+ * made for other realms.
+ */
+public class DaplaCacheResource {
+
+    private final KeycloakSession session;
+
+    public DaplaCacheResource(KeycloakSession session) {
+        this.session = session;
+    }
+
+    @GET
+    @Path("stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<DaplaCacheAdmin.CacheStats> stats() {
+        return admin(AdminRoles.REALM_ADMIN, AdminRoles.VIEW_REALM).stats();
+    }
+
+    @DELETE
+    @Path("cache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public DaplaCacheAdmin.FlushResult flushAll() {
+        return sharedCacheAdmin().flushAll();
+    }
+
+    @DELETE
+    @Path("cache/users/{user}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public DaplaCacheAdmin.FlushResult flushUser(@PathParam("user") String user) {
+        return sharedCacheAdmin().flushUser(user);
+    }
+
+    @DELETE
+    @Path("cache/teams/{team}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public DaplaCacheAdmin.FlushResult flushTeam(@PathParam("team") String team) {
+        return sharedCacheAdmin().flushTeam(team);
+    }
+
+    /**
+     * Start warming up the caches for a list of users in the background. Responds with 202 Accepted and the status
+     * of the warm-up, which can be followed with {@link #warmUpStatus()}. Does nothing if a warm-up is running.
+     */
+    @POST
+    @Path("warm-up")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response warmUp(WarmUpRequest request) {
+        DaplaCacheAdmin admin = sharedCacheAdmin();
+        if (request == null || request.users() == null) {
+            throw new BadRequestException("A list of users is required");
+        }
+        if (request.users().size() > DaplaCacheAdmin.MAX_WARM_UP_USERS) {
+            throw new BadRequestException("At most " + DaplaCacheAdmin.MAX_WARM_UP_USERS + " users can be warmed up at a time");
+        }
+        int concurrency = request.concurrency() == null ? TeamApiCacheWarmer.DEFAULT_CONCURRENCY : request.concurrency();
+        return Response.accepted(admin.startWarmUp(request.users(), concurrency)).build();
+    }
+
+    @GET
+    @Path("warm-up")
+    @Produces(MediaType.APPLICATION_JSON)
+    public DaplaCacheAdmin.WarmUpStatus warmUpStatus() {
+        DaplaCacheAdmin.WarmUpStatus status = admin(AdminRoles.REALM_ADMIN, AdminRoles.VIEW_REALM).warmUpStatus();
+        if (status == null) {
+            throw new NotFoundException("No cache warm-up has been started");
+        }
+        return status;
+    }
+
+    private DaplaCacheAdmin admin(String... allowedRoles) {
+        return new DaplaCacheAdmin(AdminAuth.requireRole(session, allowedRoles));
+    }
+
+    /**
+     * Admin for operations that change caches shared with other realms
+     */
+    private DaplaCacheAdmin sharedCacheAdmin() {
+        return new DaplaCacheAdmin(AdminAuth.requireAdminRealmAdmin(session));
+    }
+
+    /**
+     * @param users the users (emails) to warm up
+     * @param concurrency max number of concurrent Team API calls per Team API
+     */
+    public record WarmUpRequest(List<String> users, Integer concurrency) {}
+
+}
@@ -0,0 +1,23 @@
+package no.ssb.dapla.keycloak.admin;
+
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.services.resource.RealmResourceProvider;
+
+public class DaplaCacheResourceProvider implements RealmResourceProvider {
+
+    private final KeycloakSession session;
+
+    public DaplaCacheResourceProvider(KeycloakSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public Object getResource() {
+        return new DaplaCacheResource(session);
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,73 @@
+package no.ssb.dapla.keycloak.admin;
+
+import no.ssb.dapla.keycloak.mappers.shortname.ShortUsernameBackfill;
+import org.keycloak.models.AdminRoles;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Admin endpoint for backfilling persisted short usernames, at /realms/{realm}/dapla-short-username-backfill.
+ *
+ * Requires a bearer token for a user in the realm with the realm-admin role (or view-realm for progress) of the
+ * realm-management client.
+ */
+public class ShortUsernameBackfillResource {
+
+    private static final int MAX_PAGE_SIZE = 5000;
+
+    private final KeycloakSession session;
+
+    public ShortUsernameBackfillResource(KeycloakSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Start a backfill in the background, or resume an interrupted one. Does nothing if a backfill is running.
+     * The parallelism is capped at the number of available processors.
+     */
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    public ShortUsernameBackfill.Progress start(@QueryParam("pageSize") Integer pageSize,
+                                                @QueryParam("parallelism") Integer parallelism) {
+        RealmModel realm = AdminAuth.requireRole(session, AdminRoles.REALM_ADMIN);
+        return ShortUsernameBackfill.start(session.getKeycloakSessionFactory(), realm,
+                        pageSize == null ? ShortUsernameBackfill.DEFAULT_PAGE_SIZE : Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE)),
+                        parallelism == null ? Runtime.getRuntime().availableProcessors() : parallelism)
+                .progress();
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public ShortUsernameBackfill.Progress progress() {
+        return job(AdminAuth.requireRole(session, AdminRoles.REALM_ADMIN, AdminRoles.VIEW_REALM)).progress();
+    }
+
+    /**
+     * Stop the backfill after the current page. It can be resumed later.
+     */
+    @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
+    public ShortUsernameBackfill.Progress cancel() {
+        ShortUsernameBackfill job = job(AdminAuth.requireRole(session, AdminRoles.REALM_ADMIN));
+        job.cancel();
+        return job.progress();
+    }
+
+    private static ShortUsernameBackfill job(RealmModel realm) {
+        ShortUsernameBackfill job = ShortUsernameBackfill.get(realm);
+        if (job == null) {
+            throw new NotFoundException("No short username backfill has been started");
+        }
+        return job;
+    }
+
+}
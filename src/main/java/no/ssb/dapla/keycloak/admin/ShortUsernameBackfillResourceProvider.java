@@ -0,0 +1,23 @@
+package no.ssb.dapla.keycloak.admin;
+
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.services.resource.RealmResourceProvider;
+
+public class ShortUsernameBackfillResourceProvider implements RealmResourceProvider {
+
+    private final KeycloakSession session;
+
+    public ShortUsernameBackfillResourceProvider(KeycloakSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public Object getResource() {
+        return new ShortUsernameBackfillResource(session);
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
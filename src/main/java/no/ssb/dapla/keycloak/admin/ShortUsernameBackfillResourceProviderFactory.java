@@ -0,0 +1,36 @@
+package no.ssb.dapla.keycloak.admin;
+
+import com.google.auto.service.AutoService;
+import org.keycloak.Config;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.services.resource.RealmResourceProvider;
+import org.keycloak.services.resource.RealmResourceProviderFactory;
+
+@AutoService(RealmResourceProviderFactory.class)
+public class ShortUsernameBackfillResourceProviderFactory implements RealmResourceProviderFactory {
+    public static final String PROVIDER_ID = "dapla-short-username-backfill";
+
+    @Override
+    public RealmResourceProvider create(KeycloakSession session) {
+        return new ShortUsernameBackfillResourceProvider(session);
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+
+}
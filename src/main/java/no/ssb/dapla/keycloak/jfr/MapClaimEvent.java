@@ -0,0 +1,40 @@
+package no.ssb.dapla.keycloak.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder event for a Dapla token mapper populating a claim.
+ *
+ * Only executions slower than the threshold are recorded. The threshold can be adjusted in the JFR settings
+ * (.jfc) used for the recording.
+ */
+@Name(MapClaimEvent.NAME)
+@Label("Map Claim")
+@Category({"Dapla", "Keycloak"})
+@Description("A Dapla token mapper populating a claim")
+@Threshold("20 ms")
+@StackTrace(false)
+public class MapClaimEvent extends Event {
+
+    public static final String NAME = "no.ssb.dapla.keycloak.MapClaim";
+
+    @Label("Mapper Id")
+    public String mapperId;
+
+    @Label("Claim Name")
+    public String claimName;
+
+    @Label("Token Type")
+    public String tokenType;
+
+    @Label("Outcome")
+    @Description("mapped, not_deduced or error")
+    public String outcome;
+
+}
@@ -0,0 +1,52 @@
+package no.ssb.dapla.keycloak.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder event for a Dapla Team API lookup, including retries.
+ *
+ * Only lookups slower than the threshold are recorded. Cache hits are normally well below the threshold.
+ *
+ * Lookups that go to the Team API are committed by the thread that completes them, usually an OkHttp thread, so
+ * the event thread is not the thread that made the lookup. That thread is recorded as the caller thread.
+ */
+@Name(TeamApiLookupEvent.NAME)
+@Label("Team API Lookup")
+@Category({"Dapla", "Keycloak"})
+@Description("A Dapla Team API lookup, served from cache or over HTTP")
+@Threshold("10 ms")
+@StackTrace(false)
+public class TeamApiLookupEvent extends Event {
+
+    public static final String NAME = "no.ssb.dapla.keycloak.TeamApiLookup";
+
+    @Label("Caller Thread")
+    @Description("Thread that started the lookup")
+    public Thread callerThread;
+
+    @Label("Team API URL")
+    public String apiUrl;
+
+    @Label("Cache Result")
+    @Description("hit, negative_hit, miss or refresh")
+    public String cacheResult;
+
+    @Label("HTTP Status")
+    @Description("Status code of the last HTTP attempt, or 0 if no response was received")
+    public int statusCode;
+
+    @Label("Bytes Received")
+    @DataAmount
+    public long bytes;
+
+    @Label("HTTP Attempts")
+    public int attempts;
+
+}
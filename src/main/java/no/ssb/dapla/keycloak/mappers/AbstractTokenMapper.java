@@ -1,7 +1,14 @@
 package no.ssb.dapla.keycloak.mappers;
 
 import com.google.common.base.CaseFormat;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Scope;
 import no.ssb.dapla.keycloak.BuildInfo;
+import no.ssb.dapla.keycloak.jfr.MapClaimEvent;
+import no.ssb.dapla.keycloak.tracing.MappingTimer;
+import no.ssb.dapla.keycloak.tracing.Tracing;
 import no.ssb.dapla.keycloak.utils.Converter;
 import no.ssb.dapla.keycloak.utils.Json;
 import org.jboss.logging.Logger;
@@ -16,14 +23,22 @@ import org.keycloak.representations.IDToken;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 
 public abstract class AbstractTokenMapper extends AbstractOIDCProtocolMapper
         implements OIDCAccessTokenMapper, OIDCIDTokenMapper, UserInfoTokenMapper {
 
+    static final AttributeKey<String> TRACE_PROVIDER_ID = AttributeKey.stringKey("dapla.mapper.provider_id");
+    static final AttributeKey<String> TRACE_CLAIM_NAME = AttributeKey.stringKey("dapla.mapper.claim_name");
+    static final AttributeKey<String> TRACE_TOKEN_TYPE = AttributeKey.stringKey("dapla.mapper.token_type");
+    static final AttributeKey<String> TRACE_OUTCOME = AttributeKey.stringKey("dapla.mapper.outcome");
+
     private final String providerId;
     protected final List<ProviderConfigProperty> configProperties = new ArrayList<>();
 
     protected final Logger log;
+    private final SlowMappingLog slowMappingLog;
+    private volatile String displayType;
 
     public AbstractTokenMapper(String providerId, ProviderConfigProperty... additionalConfigProperties) {
         this(providerId, Arrays.asList(additionalConfigProperties));
@@ -31,6 +46,7 @@ public abstract class AbstractTokenMapper extends AbstractOIDCProtocolMapper
 
     public AbstractTokenMapper(String providerId, List<ProviderConfigProperty> additionalConfigProperties) {
         this.log = Logger.getLogger(getClass());
+        this.slowMappingLog = new SlowMappingLog(providerId, log);
 
         if (providerId == null || ! providerId.startsWith("oidc-dapla")) {
             throw new IllegalArgumentException("Claim mapper id must start with 'oidc-dapla'");
@@ -54,6 +70,26 @@ public abstract class AbstractTokenMapper extends AbstractOIDCProtocolMapper
                 .defaultValue(Boolean.FALSE)
                 .build());
 
+        this.configProperties.add(configProperty()
+                .name(ConfigPropertyKey.SLOW_MAPPING_THRESHOLD_MILLIS)
+                .label("Slow mapping threshold (millis)")
+                .helpText("""
+                        Log a timing breakdown (config, service creation, HTTP, JSON and claim mapping) of executions
+                        slower than this. Use 0 to disable.""")
+                .type(ConfigPropertyType.STRING)
+                .defaultValue(String.valueOf(SlowMappingLog.DEFAULT_THRESHOLD_MILLIS))
+                .build());
+
+        this.configProperties.add(configProperty()
+                .name(ConfigPropertyKey.SLOW_MAPPING_MAX_LOGS_PER_MINUTE)
+                .label("Max slow mapping logs per minute")
+                .helpText("""
+                        Max number of slow mapping log lines per minute for this mapper. Further slow executions
+                        are only counted, and the count is included in the next log line.""")
+                .type(ConfigPropertyType.STRING)
+                .defaultValue(String.valueOf(SlowMappingLog.DEFAULT_MAX_LOGS_PER_MINUTE))
+                .build());
+
         this.configProperties.addAll(additionalConfigProperties);
     }
 
@@ -78,7 +114,13 @@ public abstract class AbstractTokenMapper extends AbstractOIDCProtocolMapper
 
     @Override
     public String getDisplayType() {
-        return getDisplayNameFromId() + " (v" + BuildInfo.INSTANCE.getVersion() + ")";
+        // Computed once per provider, as the admin console asks for it on every listing of mappers
+        String displayType = this.displayType;
+        if (displayType == null) {
+            displayType = getDisplayNameFromId() + " (v" + BuildInfo.INSTANCE.getVersion() + ")";
+            this.displayType = displayType;
+        }
+        return displayType;
     }
 
     private String getDisplayNameFromId() {
@@ -110,20 +152,71 @@ public abstract class AbstractTokenMapper extends AbstractOIDCProtocolMapper
                             final UserSessionModel userSession,
                             final KeycloakSession keycloakSession,
                             final ClientSessionContext clientSessionCtx) {
+        MappingTimer timer = MappingTimer.start();
         boolean verbose = isVerboseLoggingEnabled(mappingModel);
         String claimName = mappingModel.getConfig().get(OIDCAttributeMapperHelper.TOKEN_CLAIM_NAME);
+        timer.lap(MappingTimer.Phase.CONFIG);
         debugLog(verbose, "Map claim " + claimName);
-        debugLog(verbose, "Token: " + Json.prettyFrom(token));
+        debugLog(verbose, () -> "Token: " + Json.prettyFrom(token));
         //debugLog(verbose, "User session: " + Json.prettyFrom(userSession));
 
-        try {
+        MapClaimEvent event = new MapClaimEvent();
+        event.begin();
+        Span span = Tracing.tracer().spanBuilder("Map claim").startSpan();
+        if (span.isRecording()) {
+            span.setAttribute(TRACE_PROVIDER_ID, providerId);
+            span.setAttribute(TRACE_CLAIM_NAME, String.valueOf(claimName));
+            span.setAttribute(TRACE_TOKEN_TYPE, token.getClass().getSimpleName());
+        }
+        String outcome = "error";
+        try (Scope ignored = span.makeCurrent()) {
+            timer.bind();
             Object claimValue = mapToClaim(token, mappingModel, userSession, keycloakSession, clientSessionCtx);
             debugLog(verbose, "Claim " + claimName + " set to " + claimValue);
-            OIDCAttributeMapperHelper.mapClaim(token, mappingModel, claimValue);
+            timer.lap();
+            applyClaim(token, mappingModel, claimValue);
+            timer.lap(MappingTimer.Phase.MAP_CLAIM);
+            outcome = "mapped";
         }
         catch (CouldNotDeduceClaimException e) {
+            outcome = "not_deduced";
             debugLog(verbose,"Unable to deduce " + claimName + " claim value. Token was NOT populated.", e);
         }
+        catch (RuntimeException e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, e.getMessage());
+            throw e;
+        }
+        finally {
+            span.setAttribute(TRACE_OUTCOME, outcome);
+            span.end();
+            event.end();
+            if (event.shouldCommit()) {
+                event.mapperId = providerId;
+                event.claimName = claimName;
+                event.outcome = outcome;
+                event.tokenType = token.getClass().getSimpleName();
+                event.commit();
+            }
+            timer.stop();
+            logIfSlow(mappingModel, claimName, outcome, timer);
+        }
+    }
+
+    private void logIfSlow(ProtocolMapperModel mappingModel, String claimName, String outcome, MappingTimer timer) {
+        Long thresholdMillis = getConfig(mappingModel, ConfigPropertyKey.SLOW_MAPPING_THRESHOLD_MILLIS, Long.class);
+        Integer maxLogsPerMinute = getConfigInteger(mappingModel, ConfigPropertyKey.SLOW_MAPPING_MAX_LOGS_PER_MINUTE);
+        String mapperKey = mappingModel.getId() == null ? String.valueOf(mappingModel.getName()) : mappingModel.getId();
+        slowMappingLog.log(mapperKey, claimName, outcome, timer,
+                thresholdMillis == null ? SlowMappingLog.DEFAULT_THRESHOLD_MILLIS : thresholdMillis,
+                maxLogsPerMinute == null ? SlowMappingLog.DEFAULT_MAX_LOGS_PER_MINUTE : maxLogsPerMinute);
+    }
+
+    /**
+     * Write the claim value to the token. Mappers that populate more than one claim can override this.
+     */
+    protected void applyClaim(final IDToken token, final ProtocolMapperModel mappingModel, final Object claimValue) {
+        OIDCAttributeMapperHelper.mapClaim(token, mappingModel, claimValue);
     }
 
     protected boolean isVerboseLoggingEnabled(final ProtocolMapperModel mappingModel) {
@@ -142,6 +235,15 @@ public abstract class AbstractTokenMapper extends AbstractOIDCProtocolMapper
         debugLog(verbose, msg, null);
     }
 
+    /**
+     * Log a message that is costly to build, building it only if it is logged
+     */
+    protected void debugLog(boolean verbose, Supplier<String> msg) {
+        if (verbose || log.isDebugEnabled()) {
+            debugLog(verbose, msg.get());
+        }
+    }
+
     protected void debugLog(boolean verbose, String msg, Throwable t) {
         if (verbose) {
             log.info(msg, t);
@@ -5,4 +5,10 @@ public class ConfigPropertyKey {
     /** Enable verbose logging in application logs */
     public static final String VERBOSE_LOGGING = "dapla.verbose-logging";
 
+    /** Log a timing breakdown of executions slower than this */
+    public static final String SLOW_MAPPING_THRESHOLD_MILLIS = "dapla.slow-mapping-threshold-millis";
+
+    /** Max number of slow mapping log lines per minute */
+    public static final String SLOW_MAPPING_MAX_LOGS_PER_MINUTE = "dapla.slow-mapping-max-logs-per-minute";
+
 }
@@ -0,0 +1,119 @@
+package no.ssb.dapla.keycloak.mappers;
+
+import no.ssb.dapla.keycloak.services.teamapi.TeamsAndGroups;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionModel;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Data about the user that is shared by all Dapla mappers within a token request.
+ *
+ * Keycloak invokes each mapper separately, and once per token type (access token, ID token, user info). The context
+ * is stored as an attribute of the Keycloak session, which lives as long as the request, so that short usernames and
+ * Team API lookups are done at most once per request no matter how many Dapla claims are mapped. Values are loaded
+ * lazily, and failed lookups are remembered as well, so that a failing Team API is not called again by the next
+ * mapper.
+ *
+ * A context is only used by the thread handling the request, and is not thread-safe.
+ */
+public final class DaplaUserContext {
+
+    private static final String SESSION_ATTRIBUTE_PREFIX = DaplaUserContext.class.getName() + ".";
+    private static final String TEAMS = "teams:";
+    private static final String TEAMS_AND_GROUPS = "teams-and-groups:";
+
+    private final UserModel user;
+    private final Map<String, Outcome<?>> values = new HashMap<>();
+
+    DaplaUserContext(UserModel user) {
+        this.user = user;
+    }
+
+    /**
+     * Get the context of the user of a user session for the current request, creating it on first use
+     */
+    public static DaplaUserContext of(KeycloakSession keycloakSession, UserSessionModel userSession) {
+        UserModel user = userSession.getUser();
+        if (keycloakSession == null) {
+            return new DaplaUserContext(user);
+        }
+
+        String attribute = SESSION_ATTRIBUTE_PREFIX + (user == null ? null : user.getId());
+        DaplaUserContext context = keycloakSession.getAttribute(attribute, DaplaUserContext.class);
+        if (context == null || context.user != user) {
+            context = new DaplaUserContext(user);
+            keycloakSession.setAttribute(attribute, context);
+        }
+        return context;
+    }
+
+    public UserModel user() {
+        return user;
+    }
+
+    /**
+     * @return the user's trimmed email, or empty if the user has no email
+     */
+    public Optional<String> email() {
+        return get("email", () -> {
+            String email = user == null ? null : user.getEmail();
+            return email == null || email.isBlank() ? Optional.empty() : Optional.of(email.trim());
+        });
+    }
+
+    /**
+     * Get the user's teams from a Team API source, reusing the result of an earlier teams and groups lookup
+     * against the same source
+     *
+     * @param sourceKey identifies the Team API source, so that mappers configured with different sources do not
+     *                  share results
+     */
+    public List<String> teams(String sourceKey, Supplier<List<String>> lookup) {
+        if (values.containsKey(TEAMS_AND_GROUPS + sourceKey)) {
+            return teamsAndGroups(sourceKey, null).teams();
+        }
+        return get(TEAMS + sourceKey, lookup);
+    }
+
+    /**
+     * Get the user's teams and groups from a Team API source
+     *
+     * @param sourceKey identifies the Team API source, so that mappers configured with different sources do not
+     *                  share results
+     */
+    public TeamsAndGroups teamsAndGroups(String sourceKey, Supplier<TeamsAndGroups> lookup) {
+        return get(TEAMS_AND_GROUPS + sourceKey, lookup);
+    }
+
+    /**
+     * Get a value, loading it on first access. This can be used by mappers to share anything else that is costly
+     * to derive.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader) {
+        Outcome<T> outcome = (Outcome<T>) values.get(key);
+        if (outcome == null) {
+            try {
+                outcome = new Outcome<>(loader.get(), null);
+            }
+            catch (RuntimeException e) {
+                outcome = new Outcome<>(null, e);
+            }
+            values.put(key, outcome);
+        }
+        if (outcome.failure() != null) {
+            throw outcome.failure();
+        }
+        return outcome.value();
+    }
+
+    private record Outcome<T>(T value, RuntimeException failure) {
+    }
+
+}
@@ -0,0 +1,93 @@
+package no.ssb.dapla.keycloak.mappers;
+
+import no.ssb.dapla.keycloak.tracing.MappingTimer;
+import org.jboss.logging.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs a single structured line with a per-phase timing breakdown for mappings slower than a threshold,
+ * such as:
+ * <pre>
+ * Slow mapping: mapper=oidc-dapla-teams-mapper claim=dapla.teams outcome=mapped totalMs=812 config=0 service=1 http=790 json=2 mapClaim=1 other=18 suppressed=0
+ * </pre>
+ *
+ * Log lines are rate limited per configured mapper. Slow mappings that are not logged are counted, and reported
+ * as 'suppressed' in the next log line.
+ */
+class SlowMappingLog {
+
+    static final long DEFAULT_THRESHOLD_MILLIS = 1000;
+    static final int DEFAULT_MAX_LOGS_PER_MINUTE = 10;
+
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String providerId;
+    private final Logger log;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    SlowMappingLog(String providerId, Logger log) {
+        this.providerId = providerId;
+        this.log = log;
+    }
+
+    /**
+     * @param mapperKey identifies the configured mapper, for rate limiting
+     * @return true if the mapping was logged
+     */
+    boolean log(String mapperKey, String claimName, String outcome, MappingTimer timer,
+                long thresholdMillis, int maxLogsPerMinute) {
+        if (thresholdMillis <= 0 || timer.totalMillis() < thresholdMillis) {
+            return false;
+        }
+
+        long suppressed = windows.computeIfAbsent(mapperKey, k -> new Window()).tryAcquire(maxLogsPerMinute, System.nanoTime());
+        if (suppressed < 0) {
+            return false;
+        }
+
+        StringBuilder sb = new StringBuilder("Slow mapping: mapper=").append(providerId)
+                .append(" claim=").append(claimName)
+                .append(" outcome=").append(outcome)
+                .append(" totalMs=").append(timer.totalMillis());
+        for (MappingTimer.Phase phase : MappingTimer.Phase.values()) {
+            sb.append(' ').append(phase.label()).append('=').append(timer.phaseMillis(phase));
+        }
+        sb.append(" other=").append(timer.otherMillis())
+                .append(" suppressed=").append(suppressed);
+        log.warn(sb.toString());
+        return true;
+    }
+
+    /**
+     * Fixed one minute rate limiting window
+     */
+    private static class Window {
+        private long startNanos;
+        private int logged;
+        private long suppressed;
+        private boolean started;
+
+        /**
+         * @return the number of suppressed logs since the previous log, or -1 if this log must be suppressed
+         */
+        synchronized long tryAcquire(int maxLogs, long now) {
+            if (!started || now - startNanos >= WINDOW_NANOS) {
+                started = true;
+                startNanos = now;
+                logged = 0;
+            }
+            if (logged >= maxLogs) {
+                suppressed++;
+                return -1;
+            }
+            logged++;
+            long count = suppressed;
+            suppressed = 0;
+            return count;
+        }
+    }
+
+}
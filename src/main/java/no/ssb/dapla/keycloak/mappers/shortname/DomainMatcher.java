@@ -0,0 +1,112 @@
+package no.ssb.dapla.keycloak.mappers.shortname;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Matches domains against a list of domain patterns, either exact ({@code ssb.no}) or wildcard ({@code *.ssb.no}).
+ * A wildcard pattern matches any subdomain, at any depth, but not the domain itself.
+ *
+ * The patterns are compiled into a trie of the reversed domain names, so that a domain is matched by walking it
+ * once from its last character. This costs O(length of the domain) regardless of the number of patterns.
+ * Matching is case-insensitive.
+ */
+final class DomainMatcher {
+
+    static final DomainMatcher NONE = new DomainMatcher(new Node());
+
+    private static final String WILDCARD_PREFIX = "*.";
+
+    private final Node root;
+
+    private DomainMatcher(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Compile a set of domain patterns. Blank patterns are ignored.
+     */
+    static DomainMatcher of(Collection<String> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return NONE;
+        }
+        Node root = new Node();
+        for (String pattern : patterns) {
+            String domain = pattern == null ? "" : pattern.trim();
+            boolean wildcard = domain.startsWith(WILDCARD_PREFIX);
+            if (wildcard) {
+                domain = domain.substring(WILDCARD_PREFIX.length());
+            }
+            if (domain.isEmpty()) {
+                continue;
+            }
+            Node node = root;
+            for (int i = domain.length() - 1; i >= 0; i--) {
+                node = node.childOrCreate(Character.toLowerCase(domain.charAt(i)));
+            }
+            if (wildcard) {
+                node.wildcard = true;
+            }
+            else {
+                node.exact = true;
+            }
+        }
+        return new DomainMatcher(root);
+    }
+
+    boolean matches(CharSequence domain) {
+        if (domain == null || domain.length() == 0) {
+            return false;
+        }
+        Node node = root;
+        for (int i = domain.length() - 1; i >= 0; i--) {
+            char c = Character.toLowerCase(domain.charAt(i));
+            // A wildcard needs a non-empty label in front of the dot
+            if (c == '.' && node.wildcard && i > 0) {
+                return true;
+            }
+            node = node.child(c);
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.exact;
+    }
+
+    /**
+     * A trie node with its children in parallel arrays sorted by character. Domains use a small alphabet, so
+     * binary search over a few entries beats a map and avoids boxing.
+     */
+    private static final class Node {
+        private char[] chars = new char[0];
+        private Node[] children = new Node[0];
+        private boolean exact;
+        private boolean wildcard;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(chars, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node childOrCreate(char c) {
+            int i = Arrays.binarySearch(chars, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int at = -i - 1;
+            Node child = new Node();
+            char[] newChars = new char[chars.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(chars, 0, newChars, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            newChars[at] = c;
+            newChildren[at] = child;
+            System.arraycopy(chars, at, newChars, at + 1, chars.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            chars = newChars;
+            children = newChildren;
+            return child;
+        }
+    }
+
+}
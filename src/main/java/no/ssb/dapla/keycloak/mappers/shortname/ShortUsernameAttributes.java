@@ -0,0 +1,99 @@
+package no.ssb.dapla.keycloak.mappers.shortname;
+
+import no.ssb.dapla.keycloak.mappers.CouldNotDeduceClaimException;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads and writes short usernames persisted as user attributes.
+ *
+ * A short username is stored in the attribute {@code short_username.<config version>}, so that mappers with
+ * different configs can coexist, and so that a config change makes previously stored values obsolete. The value
+ * is tagged with a hash of the email it was computed from, so that a value is never used after the email has
+ * changed, even if the change was missed by {@link ShortUsernameEventListenerProvider}.
+ */
+public class ShortUsernameAttributes {
+
+    public static final String ATTRIBUTE_PREFIX = "short_username.";
+
+    private static final char EMAIL_HASH_SEPARATOR = ';';
+    private static final int EMAIL_HASH_BYTES = 8;
+
+    private ShortUsernameAttributes() {}
+
+    static String attributeName(ShortUsernameConfig config) {
+        return ATTRIBUTE_PREFIX + config.version();
+    }
+
+    /**
+     * @return the persisted short username, or null if missing or computed from another email
+     */
+    public static String read(UserModel user, ShortUsernameConfig config) {
+        String stored = user.getFirstAttribute(attributeName(config));
+        if (stored == null) {
+            return null;
+        }
+        int separator = stored.lastIndexOf(EMAIL_HASH_SEPARATOR);
+        if (separator < 0 || !stored.substring(separator + 1).equals(emailHash(user.getEmail()))) {
+            return null;
+        }
+        return stored.substring(0, separator);
+    }
+
+    public static void write(UserModel user, ShortUsernameConfig config, String shortUsername) {
+        user.setSingleAttribute(attributeName(config), shortUsername + EMAIL_HASH_SEPARATOR + emailHash(user.getEmail()));
+    }
+
+    /**
+     * Recompute the user's short usernames for the given configs, and remove short usernames of other configs.
+     * Attributes that are already up to date are not written, so that saving a profile without changing the email
+     * does not touch the database.
+     */
+    public static void recompute(UserModel user, Collection<ShortUsernameConfig> configs) {
+        Set<String> current = configs.stream().map(ShortUsernameAttributes::attributeName).collect(Collectors.toSet());
+        user.getAttributes().keySet().stream()
+                .filter(name -> name.startsWith(ATTRIBUTE_PREFIX) && !current.contains(name))
+                .toList()
+                .forEach(user::removeAttribute);
+
+        String email = user.getEmail();
+        for (ShortUsernameConfig config : configs) {
+            try {
+                String shortUsername = config.shortUsername(email);
+                if (!shortUsername.equals(read(user, config))) {
+                    write(user, config, shortUsername);
+                }
+            }
+            catch (CouldNotDeduceClaimException e) {
+                if (user.getFirstAttribute(attributeName(config)) != null) {
+                    user.removeAttribute(attributeName(config));
+                }
+            }
+        }
+    }
+
+    /**
+     * The distinct configs of the realm's short username mappers that persist short usernames
+     */
+    public static List<ShortUsernameConfig> persistedConfigs(RealmModel realm) {
+        return Stream.concat(
+                        realm.getClientsStream().flatMap(c -> c.getProtocolMappersStream()),
+                        realm.getClientScopesStream().flatMap(s -> s.getProtocolMappersStream()))
+                .filter(model -> ShortUsernameMapper.PROVIDER_ID.equals(model.getProtocolMapper()))
+                .filter(ShortUsernameConfig::isPersisted)
+                .map(ShortUsernameConfig::of)
+                .distinct()
+                .toList();
+    }
+
+    private static String emailHash(String email) {
+        return email == null ? "" : ShortUsernameConfig.sha256Hex(email.trim(), EMAIL_HASH_BYTES);
+    }
+
+}
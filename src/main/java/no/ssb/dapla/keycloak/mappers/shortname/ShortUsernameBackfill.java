@@ -0,0 +1,278 @@
+package no.ssb.dapla.keycloak.mappers.shortname;
+
+import no.ssb.dapla.keycloak.mappers.CouldNotDeduceClaimException;
+import org.jboss.logging.Logger;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Computes and persists the short usernames of all users in a realm, for realms that enable
+ * 'Persist as user attribute' on existing users.
+ *
+ * Users are read in pages, and every page is written in its own transaction. Short usernames of a page are
+ * computed in parallel, while reads and writes stay on the job thread. The offset of the next page is stored as a
+ * realm attribute in the same transaction as the page, so that a cancelled or interrupted job resumes where it
+ * left off. Users whose persisted short usernames are up to date are not written again.
+ *
+ * Collisions (different users with the same short username for the same config) are detected with a hash index
+ * of the short usernames seen by the job. Users processed before a resume are not part of the index.
+ *
+ * Pages are read by offset, as Keycloak's user search has no stable cursor. Users created or deleted while the
+ * job runs shift the pages, so some users may be processed twice and others skipped. Users skipped this way, and
+ * users created while the job runs, get their short usernames on first use, or by running the job again once it
+ * has completed. A second run only writes the users that were missed.
+ */
+public class ShortUsernameBackfill implements Runnable {
+    private static final Logger log = Logger.getLogger(ShortUsernameBackfill.class);
+
+    public static final String RESUME_OFFSET_ATTRIBUTE = "dapla.short-username.backfill.offset";
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    public static final int MAX_COLLISION_SAMPLES = 100;
+
+    private static final Map<String, ShortUsernameBackfill> JOBS = new ConcurrentHashMap<>();
+
+    public enum State { RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    private final Pages pages;
+    private final List<ShortUsernameConfig> configs;
+    private final int pageSize;
+    private final ForkJoinPool pool;
+    private final Map<String, String> shortUsernameIndex = new ConcurrentHashMap<>();
+    private final List<String> collisionSamples = new ArrayList<>();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong updated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong collisions = new AtomicLong();
+    private final long startedAt = System.currentTimeMillis();
+    private volatile long offset;
+    private volatile long finishedAt;
+    private volatile State state = State.RUNNING;
+    private volatile boolean cancelled;
+
+    ShortUsernameBackfill(Pages pages, List<ShortUsernameConfig> configs, int pageSize, int parallelism) {
+        this.pages = pages;
+        this.configs = List.copyOf(configs);
+        this.pageSize = pageSize;
+        this.pool = new ForkJoinPool(parallelism(parallelism));
+    }
+
+    /**
+     * Computing short usernames is CPU bound, so more threads than processors would not help
+     */
+    static int parallelism(int requested) {
+        return Math.max(1, Math.min(requested, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Start a backfill of a realm, unless one is already running
+     *
+     * @return the running job
+     */
+    public static ShortUsernameBackfill start(KeycloakSessionFactory sessionFactory, RealmModel realm, int pageSize, int parallelism) {
+        return JOBS.compute(realm.getId(), (realmId, job) -> {
+            if (job != null && job.state == State.RUNNING) {
+                return job;
+            }
+            ShortUsernameBackfill backfill = new ShortUsernameBackfill(new KeycloakPages(sessionFactory, realmId),
+                    ShortUsernameAttributes.persistedConfigs(realm), pageSize, parallelism);
+            Thread thread = new Thread(backfill, "dapla-short-username-backfill-" + realm.getName());
+            thread.setDaemon(true);
+            thread.start();
+            return backfill;
+        });
+    }
+
+    /**
+     * @return the latest backfill job of a realm, or null if none has been started
+     */
+    public static ShortUsernameBackfill get(RealmModel realm) {
+        return JOBS.get(realm.getId());
+    }
+
+    /**
+     * Stop after the current page. A new job resumes from the next page.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (configs.isEmpty()) {
+                log.info("No short username mappers persist short usernames. Nothing to backfill.");
+            }
+            else {
+                offset = pages.resumeOffset();
+                log.info("Backfill short usernames for " + configs + " from offset " + offset);
+                int count;
+                do {
+                    count = pages.inTransaction(offset, pageSize, this::processBatch);
+                    offset += count;
+                } while (count == pageSize && !cancelled);
+            }
+            state = cancelled ? State.CANCELLED : State.COMPLETED;
+        }
+        catch (RuntimeException e) {
+            log.error("Short username backfill failed at offset " + offset, e);
+            state = State.FAILED;
+        }
+        finally {
+            finishedAt = System.currentTimeMillis();
+            pool.shutdown();
+            log.info("Short username backfill " + state + ": " + progress());
+        }
+    }
+
+    /**
+     * Compute the short usernames of a page of users in parallel, and write those that changed
+     */
+    void processBatch(List<UserModel> users) {
+        List<String> emails = users.stream().map(UserModel::getEmail).toList();
+        List<String[]> shortUsernames = pool.submit(() -> emails.parallelStream().map(this::shortUsernames).toList()).join();
+
+        for (int i = 0; i < users.size(); i++) {
+            UserModel user = users.get(i);
+            String[] values = shortUsernames.get(i);
+            processed.incrementAndGet();
+            if (values == null) {
+                failed.incrementAndGet();
+                continue;
+            }
+
+            boolean changed = false;
+            for (int c = 0; c < configs.size(); c++) {
+                ShortUsernameConfig config = configs.get(c);
+                checkCollision(config, values[c], user.getId());
+                if (!values[c].equals(ShortUsernameAttributes.read(user, config))) {
+                    ShortUsernameAttributes.write(user, config, values[c]);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                updated.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return the user's short username for every config, or null if it cannot be deduced
+     */
+    private String[] shortUsernames(String email) {
+        if (email == null || email.isBlank()) {
+            return null;
+        }
+        String[] values = new String[configs.size()];
+        try {
+            for (int c = 0; c < configs.size(); c++) {
+                values[c] = configs.get(c).shortUsername(email);
+            }
+            return values;
+        }
+        catch (CouldNotDeduceClaimException e) {
+            return null;
+        }
+    }
+
+    private void checkCollision(ShortUsernameConfig config, String shortUsername, String userId) {
+        String existing = shortUsernameIndex.putIfAbsent(config.version() + ":" + shortUsername, userId);
+        if (existing != null && !existing.equals(userId)) {
+            collisions.incrementAndGet();
+            synchronized (collisionSamples) {
+                if (collisionSamples.size() < MAX_COLLISION_SAMPLES) {
+                    collisionSamples.add(shortUsername + " (users " + existing + ", " + userId + ")");
+                }
+            }
+        }
+    }
+
+    public Progress progress() {
+        long elapsedMillis = (finishedAt == 0 ? System.currentTimeMillis() : finishedAt) - startedAt;
+        List<String> samples;
+        synchronized (collisionSamples) {
+            samples = List.copyOf(collisionSamples);
+        }
+        return new Progress(state, offset, processed.get(), updated.get(), failed.get(), collisions.get(), samples,
+                elapsedMillis, elapsedMillis == 0 ? 0 : processed.get() * 1000.0 / elapsedMillis);
+    }
+
+    /**
+     * @param state state of the job
+     * @param offset offset of the next page
+     * @param processed number of users processed by this job
+     * @param updated number of users whose short usernames were written
+     * @param failed number of users without a short username (such as no or invalid email)
+     * @param collisions number of users with the same short username as another user
+     * @param collisionSamples some of the colliding short usernames
+     * @param elapsedMillis duration of the job
+     * @param usersPerSecond throughput
+     */
+    public record Progress(State state, long offset, long processed, long updated, long failed, long collisions,
+                           List<String> collisionSamples, long elapsedMillis, double usersPerSecond) {}
+
+    /**
+     * Source of pages of users
+     */
+    interface Pages {
+
+        /**
+         * @return the offset to start from
+         */
+        long resumeOffset();
+
+        /**
+         * Process a page of users in a transaction, remembering the offset of the next page in the same transaction
+         *
+         * @return the number of users in the page
+         */
+        int inTransaction(long offset, int pageSize, Consumer<List<UserModel>> batch);
+    }
+
+    /**
+     * Pages of the users of a realm, ordered by username
+     */
+    private record KeycloakPages(KeycloakSessionFactory sessionFactory, String realmId) implements Pages {
+
+        @Override
+        public long resumeOffset() {
+            long[] offset = new long[1];
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+                String stored = session.realms().getRealm(realmId).getAttribute(RESUME_OFFSET_ATTRIBUTE);
+                offset[0] = stored == null ? 0 : Long.parseLong(stored);
+            });
+            return offset[0];
+        }
+
+        @Override
+        public int inTransaction(long offset, int pageSize, Consumer<List<UserModel>> batch) {
+            int[] count = new int[1];
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+                RealmModel realm = session.realms().getRealm(realmId);
+                List<UserModel> users = session.users()
+                        .searchForUserStream(realm, Map.of(UserModel.INCLUDE_SERVICE_ACCOUNT, Boolean.FALSE.toString()),
+                                Math.toIntExact(offset), pageSize)
+                        .toList();
+                batch.accept(users);
+                count[0] = users.size();
+                if (users.size() == pageSize) {
+                    realm.setAttribute(RESUME_OFFSET_ATTRIBUTE, String.valueOf(offset + users.size()));
+                }
+                else {
+                    realm.removeAttribute(RESUME_OFFSET_ATTRIBUTE);
+                }
+            });
+            return count[0];
+        }
+    }
+
+}
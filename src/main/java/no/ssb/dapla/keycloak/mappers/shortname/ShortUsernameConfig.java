@@ -0,0 +1,108 @@
+package no.ssb.dapla.keycloak.mappers.shortname;
+
+import org.keycloak.models.ProtocolMapperModel;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * The parts of a short username mapper config that determine the short username, with a version that changes
+ * whenever the result for some email could change.
+ *
+ * Configs are parsed once per distinct mapper config, including the {@link DomainMatcher} for the domains that are
+ * not used as prefix.
+ */
+public final class ShortUsernameConfig {
+
+    /** Bump this if the short username algorithm changes, so that persisted short usernames are recomputed */
+    static final int ALGORITHM_VERSION = 2;
+
+    private static final Map<String, ShortUsernameConfig> CONFIGS = new ConcurrentHashMap<>();
+
+    private final boolean useDomainAsPrefix;
+    private final Set<String> domainsNotUsedAsPrefix;
+    private final DomainMatcher domainMatcher;
+    private final String version;
+
+    ShortUsernameConfig(boolean useDomainAsPrefix, Set<String> domainsNotUsedAsPrefix) {
+        this.useDomainAsPrefix = useDomainAsPrefix;
+        this.domainsNotUsedAsPrefix = Set.copyOf(domainsNotUsedAsPrefix);
+        this.domainMatcher = DomainMatcher.of(domainsNotUsedAsPrefix);
+        this.version = version(ALGORITHM_VERSION + "|" + useDomainAsPrefix + "|" + String.join(",", new TreeSet<>(domainsNotUsedAsPrefix)));
+    }
+
+    /**
+     * Get the config of a short username mapper
+     */
+    public static ShortUsernameConfig of(ProtocolMapperModel model) {
+        Map<String, String> config = model.getConfig() == null ? Map.of() : model.getConfig();
+        String useDomainAsPrefix = config.get(ShortUsernameMapper.ConfigPropertyKey.USE_DOMAIN_AS_PREFIX);
+        String domainsNotUsedAsPrefix = config.get(ShortUsernameMapper.ConfigPropertyKey.DOMAINS_NOT_USED_AS_PREFIX);
+        return CONFIGS.computeIfAbsent(useDomainAsPrefix + "\n" + domainsNotUsedAsPrefix, key -> new ShortUsernameConfig(
+                // Same default as the config property
+                useDomainAsPrefix == null || Boolean.parseBoolean(useDomainAsPrefix),
+                parseDomains(domainsNotUsedAsPrefix)));
+    }
+
+    /**
+     * @return true if the mapper persists short usernames as user attributes
+     */
+    public static boolean isPersisted(ProtocolMapperModel model) {
+        return model.getConfig() != null
+                && Boolean.parseBoolean(model.getConfig().get(ShortUsernameMapper.ConfigPropertyKey.PERSIST_AS_ATTRIBUTE));
+    }
+
+    static Set<String> parseDomains(String config) {
+        return (config == null || config.isBlank())
+                ? Set.of()
+                : Arrays.stream(config.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    public String shortUsername(String email) {
+        return ShortUsernameMapper.emailToShortUsername(email, useDomainAsPrefix, domainMatcher);
+    }
+
+    /**
+     * A short hash of the config
+     */
+    public String version() {
+        return version;
+    }
+
+    private static String version(String canonicalConfig) {
+        return sha256Hex(canonicalConfig, 4);
+    }
+
+    /**
+     * @return the first {@code bytes} bytes of the SHA-256 digest of a value, hex encoded
+     */
+    static String sha256Hex(String value, int bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, bytes);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ShortUsernameConfig{" +
+                "useDomainAsPrefix=" + useDomainAsPrefix +
+                ", domainsNotUsedAsPrefix=" + domainsNotUsedAsPrefix +
+                ", version=" + version +
+                '}';
+    }
+}
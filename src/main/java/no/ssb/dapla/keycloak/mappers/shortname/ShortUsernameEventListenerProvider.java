@@ -0,0 +1,84 @@
+package no.ssb.dapla.keycloak.mappers.shortname;
+
+import org.jboss.logging.Logger;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Recomputes a user's persisted short usernames when the user's email may have changed.
+ */
+public class ShortUsernameEventListenerProvider implements EventListenerProvider {
+    private static final Logger log = Logger.getLogger(ShortUsernameEventListenerProvider.class);
+
+    private static final Set<EventType> EMAIL_CHANGING_EVENTS = Set.of(EventType.UPDATE_EMAIL, EventType.UPDATE_PROFILE);
+    private static final Set<OperationType> EMAIL_CHANGING_OPERATIONS = Set.of(OperationType.CREATE, OperationType.UPDATE);
+
+    private final KeycloakSession session;
+
+    public ShortUsernameEventListenerProvider(KeycloakSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        if (EMAIL_CHANGING_EVENTS.contains(event.getType()) && event.getUserId() != null) {
+            recomputeInTransaction(event.getRealmId(), event.getUserId());
+        }
+    }
+
+    @Override
+    public void onEvent(AdminEvent event, boolean includeRepresentation) {
+        String userId = updatedUserId(event);
+        if (userId != null) {
+            recomputeInTransaction(event.getRealmId(), userId);
+        }
+    }
+
+    /**
+     * @return the id of the user created or updated by an admin event (resource path 'users/{id}'), or null
+     */
+    static String updatedUserId(AdminEvent event) {
+        if (event.getResourceType() != ResourceType.USER || !EMAIL_CHANGING_OPERATIONS.contains(event.getOperationType())
+                || event.getResourcePath() == null) {
+            return null;
+        }
+        String[] path = event.getResourcePath().split("/");
+        return path.length == 2 && "users".equals(path[0]) ? path[1] : null;
+    }
+
+    private void recomputeInTransaction(String realmId, String userId) {
+        KeycloakModelUtils.runJobInTransaction(session.getKeycloakSessionFactory(), s -> {
+            RealmModel realm = s.realms().getRealm(realmId);
+            UserModel user = realm == null ? null : s.users().getUserById(realm, userId);
+            if (user != null) {
+                recompute(realm, user);
+            }
+        });
+    }
+
+    /**
+     * Recompute the user's short usernames. Also runs when the realm no longer has any persisting mappers, so that
+     * the short usernames of removed mappers are cleaned up.
+     */
+    static void recompute(RealmModel realm, UserModel user) {
+        List<ShortUsernameConfig> configs = ShortUsernameAttributes.persistedConfigs(realm);
+        log.debug("Recompute short usernames of user " + user.getId() + " for " + configs);
+        ShortUsernameAttributes.recompute(user, configs);
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,40 @@
+package no.ssb.dapla.keycloak.mappers.shortname;
+
+import com.google.auto.service.AutoService;
+import org.keycloak.Config;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.EventListenerProviderFactory;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+
+/**
+ * Enable the 'dapla-short-username' event listener in the realm's event config to keep persisted short usernames
+ * up to date when users change email.
+ */
+@AutoService(EventListenerProviderFactory.class)
+public class ShortUsernameEventListenerProviderFactory implements EventListenerProviderFactory {
+    public static final String PROVIDER_ID = "dapla-short-username";
+
+    @Override
+    public EventListenerProvider create(KeycloakSession session) {
+        return new ShortUsernameEventListenerProvider(session);
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+
+}
@@ -4,17 +4,17 @@ import com.google.auto.service.AutoService;
 import no.ssb.dapla.keycloak.mappers.AbstractTokenMapper;
 import no.ssb.dapla.keycloak.mappers.ConfigPropertyType;
 import no.ssb.dapla.keycloak.mappers.CouldNotDeduceClaimException;
+import no.ssb.dapla.keycloak.mappers.DaplaUserContext;
 import no.ssb.dapla.keycloak.utils.Email;
 import org.keycloak.models.ClientSessionContext;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.UserModel;
 import org.keycloak.models.UserSessionModel;
 import org.keycloak.protocol.ProtocolMapper;
 import org.keycloak.representations.IDToken;
 
-import java.util.Arrays;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @AutoService(ProtocolMapper.class)
 public class ShortUsernameMapper extends AbstractTokenMapper {
@@ -24,6 +24,7 @@ public class ShortUsernameMapper extends AbstractTokenMapper {
     public static class ConfigPropertyKey {
         public static final String USE_DOMAIN_AS_PREFIX = "dapla.short-username.use-domain-as-prefix";
         public static final String DOMAINS_NOT_USED_AS_PREFIX = "dapla.short-username.domains-not-used-as-prefix";
+        public static final String PERSIST_AS_ATTRIBUTE = "dapla.short-username.persist-as-attribute";
     }
 
     public ShortUsernameMapper() {
@@ -47,12 +48,25 @@ public class ShortUsernameMapper extends AbstractTokenMapper {
                                 Domains that will not be used as prefixes to the shortname.
                                 This is only relevant if 'Use domain as prefix' (see above) is On.
                                 Leave this empty to have all usernames be prefixed with domain.
+                                Use '*.domain.com' to exclude all subdomains of 'domain.com' (but not 'domain.com' itself).
                                 
                                 Example: Specify your primary domain name (such as 'domain.com') so that only users
                                 from other domains will receive a prefix to their short_username claim:
                                 john.doe@domain.com -> john-doe,
                                 jane.doe@anotherdomain.com -> anotherdomain-jane-doe""")
                         .type(ConfigPropertyType.MULTIVALUED_STRING)
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.PERSIST_AS_ATTRIBUTE)
+                        .label("Persist as user attribute")
+                        .helpText("""
+                                Enable this to store the short username as a user attribute, tagged with a version of
+                                this config, instead of computing it for every token. It is computed when missing, when
+                                this config changes, and when the user's email changes. Enable the 'dapla-short-username'
+                                event listener for the realm to recompute it as soon as a user's email is changed.""")
+                        .type(ConfigPropertyType.BOOLEAN)
+                        .defaultValue(Boolean.FALSE)
                         .build()
         );
     }
@@ -68,24 +82,44 @@ public class ShortUsernameMapper extends AbstractTokenMapper {
                                 final UserSessionModel userSession,
                                 final KeycloakSession keycloakSession,
                                 final ClientSessionContext clientSessionCtx) {
-        String email = userSession.getUser().getEmail();
-        if (email == null || email.trim().isEmpty()) {
-            throw new CouldNotDeduceClaimException("Email was null or empty. Unable to deduce shortname.");
+        DaplaUserContext context = DaplaUserContext.of(keycloakSession, userSession);
+        String email = context.email()
+                .orElseThrow(() -> new CouldNotDeduceClaimException("Email was null or empty. Unable to deduce shortname."));
+
+        if (ShortUsernameConfig.isPersisted(mappingModel)) {
+            return persistedShortUsername(mappingModel, context.user());
         }
 
-        boolean useDomainAsPrefix = useDomainAsPrefix(mappingModel);
-        Set<String> domainsNotUsedAsPrefix = domainsNotUsedAsPrefix(mappingModel);
-        return emailToShortUsername(email, useDomainAsPrefix, domainsNotUsedAsPrefix);
+        ShortUsernameConfig config = ShortUsernameConfig.of(mappingModel);
+        return context.get("short-username:" + config.version(), () -> config.shortUsername(email));
+    }
+
+    /**
+     * Read the short username from the user's attributes, computing and storing it if missing or outdated
+     */
+    String persistedShortUsername(final ProtocolMapperModel mappingModel, final UserModel user) {
+        ShortUsernameConfig config = ShortUsernameConfig.of(mappingModel);
+        String shortUsername = ShortUsernameAttributes.read(user, config);
+        if (shortUsername == null) {
+            debugLog(mappingModel, "Compute and persist short username (config version " + config.version() + ")");
+            shortUsername = config.shortUsername(user.getEmail());
+            ShortUsernameAttributes.write(user, config, shortUsername);
+        }
+        return shortUsername;
     }
 
     static String emailToShortUsername(String email, boolean useDomainAsPrefix, Set<String> domainsNotUsedAsPrefix) {
+        return emailToShortUsername(email, useDomainAsPrefix, DomainMatcher.of(domainsNotUsedAsPrefix));
+    }
+
+    static String emailToShortUsername(String email, boolean useDomainAsPrefix, DomainMatcher domainsNotUsedAsPrefix) {
         String localPart = Email.localPart(email)
                 .orElseThrow(() -> new CouldNotDeduceClaimException("Unable to retrieve local part from email " + email));
 
         String domainPart = null;
         if (useDomainAsPrefix) {
             domainPart = Email.domainPart(email)
-                    .filter(d -> !domainsNotUsedAsPrefix.contains(d))
+                    .filter(d -> !domainsNotUsedAsPrefix.matches(d))
                     .orElse(null);
         }
 
@@ -100,14 +134,7 @@ public class ShortUsernameMapper extends AbstractTokenMapper {
     }
 
     Set<String> domainsNotUsedAsPrefix(final ProtocolMapperModel mappingModel) {
-        String config = getConfigString(mappingModel, ConfigPropertyKey.DOMAINS_NOT_USED_AS_PREFIX);
-
-        return (config == null || config.isBlank())
-                ? Set.of()
-                : Arrays.stream(config.split(","))
-                .map(String::trim)
-                .filter(s -> !s.isEmpty())
-                .collect(Collectors.toSet());
+        return ShortUsernameConfig.parseDomains(getConfigString(mappingModel, ConfigPropertyKey.DOMAINS_NOT_USED_AS_PREFIX));
     }
 
     private static String asRfc1123(String s) {
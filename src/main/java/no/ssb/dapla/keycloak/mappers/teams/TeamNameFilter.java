@@ -0,0 +1,159 @@
+package no.ssb.dapla.keycloak.mappers.teams;
+
+import no.ssb.dapla.keycloak.DaplaKeycloakException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Include/exclude filter for team names, compiled once from a set of patterns.
+ *
+ * A pattern is either an exact team name (such as 'play-foeniks-a') or a prefix ending with '*'
+ * (such as 'play-*'). A single '*' matches every team. The patterns are compiled into prefix tries,
+ * so matching a team name costs at most one trie walk per team name character, regardless of the
+ * number of patterns.
+ */
+public class TeamNameFilter {
+
+    /** A filter that lets all teams through */
+    public static final TeamNameFilter ALLOW_ALL = new TeamNameFilter(List.of(), List.of());
+
+    private final PrefixTrie includes;
+    private final PrefixTrie excludes;
+
+    private TeamNameFilter(Collection<String> includePatterns, Collection<String> excludePatterns) {
+        this.includes = PrefixTrie.compile(includePatterns);
+        this.excludes = PrefixTrie.compile(excludePatterns);
+    }
+
+    /**
+     * Compile a filter from include and exclude patterns. If no include patterns are specified, all teams that
+     * are not explicitly excluded are let through.
+     */
+    public static TeamNameFilter compile(Collection<String> includePatterns, Collection<String> excludePatterns) {
+        if (includePatterns.isEmpty() && excludePatterns.isEmpty()) {
+            return ALLOW_ALL;
+        }
+        return new TeamNameFilter(includePatterns, excludePatterns);
+    }
+
+    public boolean isAllowAll() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+
+    public boolean matches(String teamName) {
+        if (teamName == null) {
+            return false;
+        }
+        return (includes.isEmpty() || includes.matches(teamName)) && !excludes.matches(teamName);
+    }
+
+    public List<String> filter(List<String> teamNames) {
+        if (isAllowAll() || teamNames == null) {
+            return teamNames;
+        }
+
+        List<String> result = new ArrayList<>(teamNames.size());
+        for (String teamName : teamNames) {
+            if (matches(teamName)) {
+                result.add(teamName);
+            }
+        }
+        return result;
+    }
+
+    static class PrefixTrie {
+        private final Node root = new Node();
+        private boolean empty = true;
+
+        static PrefixTrie compile(Collection<String> patterns) {
+            PrefixTrie trie = new PrefixTrie();
+            for (String pattern : patterns) {
+                trie.add(pattern);
+            }
+            return trie;
+        }
+
+        private void add(String pattern) {
+            int wildcardPos = pattern.indexOf('*');
+            if (wildcardPos >= 0 && wildcardPos != pattern.length() - 1) {
+                throw new DaplaKeycloakException("Unsupported team name pattern '" + pattern
+                        + "'. Wildcards (*) are only supported at the end of a pattern.");
+            }
+
+            boolean isPrefix = wildcardPos >= 0;
+            String literal = isPrefix ? pattern.substring(0, wildcardPos) : pattern;
+
+            Node node = root;
+            for (int i = 0; i < literal.length(); i++) {
+                node = node.childOrCreate(literal.charAt(i));
+            }
+            if (isPrefix) {
+                node.prefixTerminal = true;
+            }
+            else {
+                node.exactTerminal = true;
+            }
+            empty = false;
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        boolean matches(String s) {
+            Node node = root;
+            for (int i = 0; i < s.length(); i++) {
+                if (node.prefixTerminal) {
+                    return true;
+                }
+                node = node.child(s.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+            return node.prefixTerminal || node.exactTerminal;
+        }
+    }
+
+    /**
+     * Trie node with children kept in sorted parallel arrays. Lookups are binary searches without boxing,
+     * which keeps the matching on the token path allocation free.
+     */
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean exactTerminal;
+        private boolean prefixTerminal;
+
+        Node child(char c) {
+            int pos = Arrays.binarySearch(keys, c);
+            return pos >= 0 ? children[pos] : null;
+        }
+
+        Node childOrCreate(char c) {
+            int pos = Arrays.binarySearch(keys, c);
+            if (pos >= 0) {
+                return children[pos];
+            }
+
+            int insertAt = -(pos + 1);
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+
+            Node child = new Node();
+            newKeys[insertAt] = c;
+            newChildren[insertAt] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+
+}
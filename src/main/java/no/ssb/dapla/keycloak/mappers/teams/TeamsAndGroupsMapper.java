@@ -0,0 +1,94 @@
+package no.ssb.dapla.keycloak.mappers.teams;
+
+import com.google.auto.service.AutoService;
+import no.ssb.dapla.keycloak.mappers.ConfigPropertyType;
+import no.ssb.dapla.keycloak.mappers.DaplaUserContext;
+import no.ssb.dapla.keycloak.services.teamapi.DaplaTeamApiService;
+import no.ssb.dapla.keycloak.services.teamapi.TeamsAndGroups;
+import no.ssb.dapla.keycloak.tracing.MappingTimer;
+import no.ssb.dapla.keycloak.tracing.MappingTimer.Phase;
+import no.ssb.dapla.keycloak.utils.Json;
+import org.keycloak.models.ClientSessionContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.protocol.ProtocolMapper;
+import org.keycloak.protocol.oidc.mappers.OIDCAttributeMapperHelper;
+import org.keycloak.representations.IDToken;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Populates both a 'teams' and a 'groups' claim from a single Dapla Team API lookup. Teams and groups are
+ * retrieved concurrently (or in one round-trip if the API implementation supports it), so the latency is
+ * bounded by the slower of the two calls.
+ */
+@AutoService(ProtocolMapper.class)
+public class TeamsAndGroupsMapper extends TeamsMapper {
+    public static final String PROVIDER_ID = "oidc-dapla-teams-and-groups-mapper";
+
+    public static class ConfigPropertyKey {
+        public static final String GROUPS_CLAIM_NAME = "dapla.teams.groups-claim-name";
+    }
+
+    public TeamsAndGroupsMapper() {
+        super(PROVIDER_ID,
+
+                configProperty()
+                        .name(ConfigPropertyKey.GROUPS_CLAIM_NAME)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Groups claim name")
+                        .helpText("""
+                                Name of the claim that the user's access groups are written to.
+                                The teams are written to the claim specified by 'Token Claim Name'.
+                                Team include/exclude patterns only apply to teams.""")
+                        .defaultValue("groups")
+                        .build()
+        );
+    }
+
+    @Override
+    protected String helpText() {
+        return "Adds 'teams' and 'groups' claims, retrieved from Dapla Team API";
+    }
+
+    @Override
+    protected Object mapToClaim(IDToken token, ProtocolMapperModel model, UserSessionModel userSession, KeycloakSession keycloakSession, ClientSessionContext clientSessionCtx) {
+        debugLog(model,"Retrieve Dapla teams and groups");
+        DaplaUserContext context = DaplaUserContext.of(keycloakSession, userSession);
+        String user = teamApiUser(context);
+        TeamNameFilter teamNameFilter = MappingTimer.time(Phase.CONFIG, () -> teamNameFilter(model));
+        TeamsAndGroups teamsAndGroups = lookup(() -> context.teamsAndGroups(teamApiSourceKey(model), () -> {
+            DaplaTeamApiService teamApiService = MappingTimer.time(Phase.SERVICE, () -> teamApiService(model));
+            return teamApiService.getTeamsAndGroups(user);
+        }));
+        return new TeamsAndGroups(teamNameFilter.filter(teamsAndGroups.teams()), teamsAndGroups.groups());
+    }
+
+    @Override
+    protected void applyClaim(IDToken token, ProtocolMapperModel mappingModel, Object claimValue) {
+        TeamsAndGroups teamsAndGroups = (TeamsAndGroups) claimValue;
+        String teamsJson = MappingTimer.time(Phase.JSON, () -> Json.from(teamsAndGroups.teams()));
+        String groupsJson = MappingTimer.time(Phase.JSON, () -> Json.from(teamsAndGroups.groups()));
+        OIDCAttributeMapperHelper.mapClaim(token, mappingModel, teamsJson);
+        OIDCAttributeMapperHelper.mapClaim(token, groupsMappingModel(mappingModel), groupsJson);
+    }
+
+    /**
+     * Copy of the mapping model that targets the groups claim instead of the teams claim
+     */
+    ProtocolMapperModel groupsMappingModel(ProtocolMapperModel mappingModel) {
+        Map<String, String> config = new HashMap<>(mappingModel.getConfig());
+        String groupsClaimName = getConfigString(mappingModel, ConfigPropertyKey.GROUPS_CLAIM_NAME);
+        config.put(OIDCAttributeMapperHelper.TOKEN_CLAIM_NAME, groupsClaimName == null ? "groups" : groupsClaimName);
+
+        ProtocolMapperModel groupsModel = new ProtocolMapperModel();
+        groupsModel.setName(mappingModel.getName());
+        groupsModel.setProtocol(mappingModel.getProtocol());
+        groupsModel.setProtocolMapper(mappingModel.getProtocolMapper());
+        groupsModel.setConfig(config);
+        return groupsModel;
+    }
+
+}
@@ -4,9 +4,22 @@ import com.google.auto.service.AutoService;
 import no.ssb.dapla.keycloak.DaplaKeycloakException;
 import no.ssb.dapla.keycloak.mappers.AbstractTokenMapper;
 import no.ssb.dapla.keycloak.mappers.ConfigPropertyType;
+import no.ssb.dapla.keycloak.mappers.CouldNotDeduceClaimException;
+import no.ssb.dapla.keycloak.mappers.DaplaUserContext;
 import no.ssb.dapla.keycloak.services.teamapi.DaplaTeamApiService;
 import no.ssb.dapla.keycloak.services.teamapi.DummyDaplaTeamApiService;
+import no.ssb.dapla.keycloak.services.teamapi.FileDaplaTeamApiService;
 import no.ssb.dapla.keycloak.services.teamapi.MockyDaplaTeamApiService;
+import no.ssb.dapla.keycloak.services.teamapi.RefreshAheadPolicy;
+import no.ssb.dapla.keycloak.services.teamapi.RetryPolicy;
+import no.ssb.dapla.keycloak.services.teamapi.ScatterGatherDaplaTeamApiService;
+import no.ssb.dapla.keycloak.services.teamapi.SyntheticTeamDirectory;
+import no.ssb.dapla.keycloak.services.teamapi.TeamApiCachePolicy;
+import no.ssb.dapla.keycloak.services.teamapi.TeamApiConfig;
+import no.ssb.dapla.keycloak.services.teamapi.TeamApiLimits;
+import no.ssb.dapla.keycloak.services.teamapi.UnknownTeamApiUserException;
+import no.ssb.dapla.keycloak.tracing.MappingTimer;
+import no.ssb.dapla.keycloak.tracing.MappingTimer.Phase;
 import no.ssb.dapla.keycloak.utils.Json;
 import org.keycloak.models.ClientSessionContext;
 import org.keycloak.models.KeycloakSession;
@@ -14,8 +27,19 @@ import org.keycloak.models.ProtocolMapperModel;
 import org.keycloak.models.UserSessionModel;
 import org.keycloak.protocol.ProtocolMapper;
 import org.keycloak.protocol.oidc.mappers.OIDCAttributeMapperHelper;
+import org.keycloak.provider.ProviderConfigProperty;
 import org.keycloak.representations.IDToken;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
 @AutoService(ProtocolMapper.class)
 public class TeamsMapper extends AbstractTokenMapper {
     public static final String PROVIDER_ID = "oidc-dapla-teams-mapper";
@@ -23,10 +47,40 @@ public class TeamsMapper extends AbstractTokenMapper {
     public static class ConfigPropertyKey {
         public static final String API_URL = "dapla.teams.team-api-url";
         public static final String API_IMPL = "dapla.teams.team-api-impl";
+        public static final String TEAM_FILE = "dapla.teams.team-file";
+        public static final String ADDITIONAL_SOURCES = "dapla.teams.additional-sources";
+        public static final String SOURCE_TIMEOUT_MILLIS = "dapla.teams.source-timeout-millis";
+        public static final String INCLUDE_TEAMS = "dapla.teams.include-teams";
+        public static final String EXCLUDE_TEAMS = "dapla.teams.exclude-teams";
+        public static final String MAX_RESPONSE_BYTES = "dapla.teams.max-response-bytes";
+        public static final String MAX_TEAMS = "dapla.teams.max-teams";
+        public static final String CACHE_TTL_SECONDS = "dapla.teams.cache-ttl-seconds";
+        public static final String NEGATIVE_CACHE_TTL_SECONDS = "dapla.teams.negative-cache-ttl-seconds";
+        public static final String REFRESH_AHEAD_FRACTION = "dapla.teams.refresh-ahead-fraction";
+        public static final String MAX_REFRESHES_PER_SECOND = "dapla.teams.max-refreshes-per-second";
+        public static final String MAX_RETRIES = "dapla.teams.max-retries";
+        public static final String ATTEMPT_TIMEOUT_MILLIS = "dapla.teams.attempt-timeout-millis";
+        public static final String LATENCY_BUDGET_MILLIS = "dapla.teams.latency-budget-millis";
+        public static final String DUMMY_USERS = "dapla.teams.dummy.users";
+        public static final String DUMMY_TEAMS = "dapla.teams.dummy.teams";
+        public static final String DUMMY_SEED = "dapla.teams.dummy.seed";
+        public static final String DUMMY_ZIPF_EXPONENT = "dapla.teams.dummy.zipf-exponent";
+        public static final String DUMMY_TEAM_NAME_LENGTH = "dapla.teams.dummy.team-name-length";
+        public static final String DUMMY_LATENCY_MILLIS = "dapla.teams.dummy.latency-millis";
     }
 
+    public static final String DEFAULT_API_URL = "https://run.mocky.io";
+    private static final Set<String> NOT_PART_OF_SOURCE_KEY = Set.of(
+            ConfigPropertyKey.INCLUDE_TEAMS, ConfigPropertyKey.EXCLUDE_TEAMS, TeamsAndGroupsMapper.ConfigPropertyKey.GROUPS_CLAIM_NAME);
+
+    private final Map<String, TeamNameFilter> teamNameFilters = new ConcurrentHashMap<>();
+
     public TeamsMapper() {
-        super(PROVIDER_ID,
+        this(PROVIDER_ID);
+    }
+
+    protected TeamsMapper(String providerId, ProviderConfigProperty... additionalConfigProperties) {
+        super(providerId, concat(List.of(
 
                 configProperty()
                         .name(ConfigPropertyKey.API_IMPL)
@@ -34,9 +88,10 @@ public class TeamsMapper extends AbstractTokenMapper {
                         .helpText("""
                                 The API implementation.
                                 Mocky: An online, mocked API.
-                                Dummy: Offline, dummy replacement instead of a real API invocation.""")
+                                Dummy: Offline, dummy replacement instead of a real API invocation.
+                                File: Offline, team memberships read from a local NDJSON file.""")
                         .type(ConfigPropertyType.LIST)
-                        .options(MockyDaplaTeamApiService.NAME, DummyDaplaTeamApiService.NAME)
+                        .options(MockyDaplaTeamApiService.NAME, DummyDaplaTeamApiService.NAME, FileDaplaTeamApiService.NAME)
                         .defaultValue(MockyDaplaTeamApiService.NAME)
                         .build(),
 
@@ -47,9 +102,212 @@ public class TeamsMapper extends AbstractTokenMapper {
                         .helpText("""
                                 Specify the root URL for the Dapla Team API.
                                 This is not relevant if 'Dapla Team API Impl' is Dummy.""")
-                        .defaultValue("https://run.mocky.io")
+                        .defaultValue(DEFAULT_API_URL)
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.TEAM_FILE)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Team file")
+                        .helpText("""
+                                Path to an NDJSON file with team memberships, one user per line, such as
+                                {"user": "john.doe@domain.com", "teams": ["team-a"], "groups": ["team-a-developers"]}
+                                The file is reloaded when it changes. Replace it atomically (write and rename).
+                                This is only relevant if 'Dapla Team API Impl' is File.""")
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.ADDITIONAL_SOURCES)
+                        .type(ConfigPropertyType.MULTIVALUED_STRING)
+                        .label("Additional team sources")
+                        .helpText("""
+                                Additional sources to retrieve teams from, on the form <impl>|<url or file>[|<timeout millis>],
+                                such as 'Mocky|https://team-api.example.com|2000' or 'File|/opt/teams.ndjson'.
+                                All sources are queried in parallel, and their teams are merged. Sources that do not
+                                answer in time are left out of the claim.""")
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.SOURCE_TIMEOUT_MILLIS)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Source timeout (millis)")
+                        .helpText("""
+                                Max time to wait for each team source, if there are additional team sources.
+                                Applies to sources without an explicit timeout. Defaults to the latency budget, so that
+                                a Team API source can use all of its retries.""")
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.INCLUDE_TEAMS)
+                        .type(ConfigPropertyType.MULTIVALUED_STRING)
+                        .label("Include teams")
+                        .helpText("""
+                                Only include teams matching these patterns in the claim.
+                                A pattern is either a team name or a prefix ending with '*', such as 'play-*'.
+                                Leave this empty to include all teams (except the excluded ones, see below).""")
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.EXCLUDE_TEAMS)
+                        .type(ConfigPropertyType.MULTIVALUED_STRING)
+                        .label("Exclude teams")
+                        .helpText("""
+                                Never include teams matching these patterns in the claim.
+                                A pattern is either a team name or a prefix ending with '*', such as 'demo-*'.
+                                Exclusions take precedence over inclusions.""")
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.MAX_RESPONSE_BYTES)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Max Team API response size")
+                        .helpText("""
+                                Max number of bytes read from a Dapla Team API response.
+                                Larger responses are rejected.""")
+                        .defaultValue(String.valueOf(TeamApiLimits.DEFAULT_MAX_RESPONSE_BYTES))
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.MAX_TEAMS)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Max teams")
+                        .helpText("""
+                                Max number of teams (and groups) accepted from a Dapla Team API response.
+                                Responses listing more teams are rejected.""")
+                        .defaultValue(String.valueOf(TeamApiLimits.DEFAULT_MAX_ELEMENTS))
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.CACHE_TTL_SECONDS)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Cache TTL (seconds)")
+                        .helpText("""
+                                For how long a user's teams are cached before they are revalidated with the
+                                Dapla Team API. Revalidation uses conditional requests, so unchanged teams are not
+                                downloaded again. Use 0 to revalidate on every token.""")
+                        .defaultValue(String.valueOf(TeamApiCachePolicy.DEFAULT_TTL.toSeconds()))
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.NEGATIVE_CACHE_TTL_SECONDS)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Negative cache TTL (seconds)")
+                        .helpText("""
+                                For how long it is cached that a user has no teams, or is unknown by the
+                                Dapla Team API. Unknown users get no teams claim.""")
+                        .defaultValue(String.valueOf(TeamApiCachePolicy.DEFAULT_NEGATIVE_TTL.toSeconds()))
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.REFRESH_AHEAD_FRACTION)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Refresh ahead (fraction of TTL)")
+                        .helpText("""
+                                Refresh the cached teams of recently active users in the background when this
+                                fraction of the cache TTL has passed (plus some random jitter), so that tokens are
+                                rarely delayed by the Dapla Team API. Use 0 to disable.""")
+                        .defaultValue(String.valueOf(RefreshAheadPolicy.DEFAULT_REFRESH_FRACTION))
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.MAX_REFRESHES_PER_SECOND)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Max background refreshes per second")
+                        .helpText("""
+                                Max number of background (refresh ahead) requests per second sent to the
+                                Dapla Team API.""")
+                        .defaultValue(String.valueOf(RefreshAheadPolicy.DEFAULT_MAX_REFRESHES_PER_SECOND))
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.MAX_RETRIES)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Max retries")
+                        .helpText("""
+                                Max number of times a failed Dapla Team API call (such as a connection reset or
+                                a 503 response) is retried, using exponential backoff with jitter. Use 0 to disable.""")
+                        .defaultValue(String.valueOf(RetryPolicy.DEFAULT_MAX_RETRIES))
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.ATTEMPT_TIMEOUT_MILLIS)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Attempt timeout (millis)")
+                        .helpText("""
+                                Timeout for a single Dapla Team API call attempt.""")
+                        .defaultValue(String.valueOf(RetryPolicy.DEFAULT_ATTEMPT_TIMEOUT.toMillis()))
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.LATENCY_BUDGET_MILLIS)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Latency budget (millis)")
+                        .helpText("""
+                                Max total time spent on a Dapla Team API lookup, including all retries.
+                                Retries are never attempted beyond this budget.""")
+                        .defaultValue(String.valueOf(RetryPolicy.DEFAULT_LATENCY_BUDGET.toMillis()))
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.DUMMY_USERS)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Dummy: Synthetic users")
+                        .helpText("""
+                                Number of distinct users in a synthetic, generated team directory.
+                                Leave this and 'Dummy: Synthetic teams' empty to give every user the same demo teams.
+                                This is only relevant if 'Dapla Team API Impl' is Dummy.""")
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.DUMMY_TEAMS)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Dummy: Synthetic teams")
+                        .helpText("""
+                                Number of teams in the synthetic team directory.
+                                This is only relevant if 'Dapla Team API Impl' is Dummy.""")
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.DUMMY_SEED)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Dummy: Seed")
+                        .helpText("""
+                                Seed for the synthetic team directory. The same seed always gives the same teams.
+                                This is only relevant if 'Dapla Team API Impl' is Dummy.""")
+                        .defaultValue(String.valueOf(SyntheticTeamDirectory.Config.DEFAULT_SEED))
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.DUMMY_ZIPF_EXPONENT)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Dummy: Zipf exponent")
+                        .helpText("""
+                                Skew of the number of teams per user and of team popularity in the synthetic team
+                                directory. 0 is uniform, higher values give most users few teams and a few users
+                                many teams. This is only relevant if 'Dapla Team API Impl' is Dummy.""")
+                        .defaultValue(String.valueOf(SyntheticTeamDirectory.Config.DEFAULT_ZIPF_EXPONENT))
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.DUMMY_TEAM_NAME_LENGTH)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Dummy: Team name length")
+                        .helpText("""
+                                Length of the team names in the synthetic team directory.
+                                This is only relevant if 'Dapla Team API Impl' is Dummy.""")
+                        .defaultValue(String.valueOf(SyntheticTeamDirectory.Config.DEFAULT_TEAM_NAME_LENGTH))
+                        .build(),
+
+                configProperty()
+                        .name(ConfigPropertyKey.DUMMY_LATENCY_MILLIS)
+                        .type(ConfigPropertyType.STRING)
+                        .label("Dummy: Simulated latency (millis)")
+                        .helpText("""
+                                Simulated latency of every synthetic team directory lookup.
+                                This is only relevant if 'Dapla Team API Impl' is Dummy.""")
+                        .defaultValue("0")
                         .build()
-                );
+                ), additionalConfigProperties));
 
         // Allow the mapper to configure the target value to be "JSON" (required)
         OIDCAttributeMapperHelper.addJsonTypeConfig(configProperties);
@@ -63,21 +321,223 @@ public class TeamsMapper extends AbstractTokenMapper {
     @Override
     protected Object mapToClaim(IDToken token, ProtocolMapperModel model, UserSessionModel userSession, KeycloakSession keycloakSession, ClientSessionContext clientSessionCtx) {
         debugLog(model,"Retrieve Dapla teams");
-        DaplaTeamApiService teamApiService = teamApiService(model);
-        return Json.from(teamApiService.getTeams());
+        DaplaUserContext context = DaplaUserContext.of(keycloakSession, userSession);
+        String user = teamApiUser(context);
+        TeamNameFilter teamNameFilter = MappingTimer.time(Phase.CONFIG, () -> teamNameFilter(model));
+        List<String> teams = lookup(() -> context.teams(teamApiSourceKey(model), () -> {
+            DaplaTeamApiService teamApiService = MappingTimer.time(Phase.SERVICE, () -> teamApiService(model));
+            return teamApiService.getTeams(user);
+        }));
+        return MappingTimer.time(Phase.JSON, () -> Json.from(teamNameFilter.filter(teams)));
+    }
+
+    /**
+     * Identifies the Team API source(s) of a mapper config, so that lookups are only shared within a request by
+     * mappers that would get the same result. Team filters and claim names are not part of the key.
+     */
+    static String teamApiSourceKey(ProtocolMapperModel model) {
+        Map<String, String> config = model.getConfig() == null ? Map.of() : model.getConfig();
+        StringBuilder key = new StringBuilder();
+        new TreeMap<>(config).forEach((name, value) -> {
+            if (name.startsWith("dapla.teams.") && !NOT_PART_OF_SOURCE_KEY.contains(name)) {
+                key.append(name).append('=').append(value).append('\n');
+            }
+        });
+        return key.toString();
+    }
+
+    /**
+     * Perform a Team API lookup, translating unknown users to a claim that cannot be deduced
+     */
+    <T> T lookup(Supplier<T> teamApiCall) {
+        try {
+            return teamApiCall.get();
+        }
+        catch (UnknownTeamApiUserException e) {
+            throw new CouldNotDeduceClaimException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The user's principal in the Dapla Team API (email)
+     */
+    String teamApiUser(DaplaUserContext context) {
+        return context.email()
+                .orElseThrow(() -> new CouldNotDeduceClaimException("Email was null or empty. Unable to look up teams."));
+    }
+
+    /**
+     * Get the team name filter for the mapper config. Filters are compiled only once per distinct
+     * include/exclude configuration.
+     */
+    TeamNameFilter teamNameFilter(ProtocolMapperModel model) {
+        String includes = getConfigString(model, ConfigPropertyKey.INCLUDE_TEAMS);
+        String excludes = getConfigString(model, ConfigPropertyKey.EXCLUDE_TEAMS);
+        if (isBlank(includes) && isBlank(excludes)) {
+            return TeamNameFilter.ALLOW_ALL;
+        }
+
+        return teamNameFilters.computeIfAbsent(includes + "\n" + excludes, key -> {
+            debugLog(model, "Compile team name filter (include: " + includes + ", exclude: " + excludes + ")");
+            return TeamNameFilter.compile(patterns(includes), patterns(excludes));
+        });
+    }
+
+    TeamApiLimits teamApiLimits(ProtocolMapperModel model) {
+        return TeamApiLimits.of(
+                getConfig(model, ConfigPropertyKey.MAX_RESPONSE_BYTES, Long.class),
+                getConfigInteger(model, ConfigPropertyKey.MAX_TEAMS));
+    }
+
+    TeamApiCachePolicy cachePolicy(ProtocolMapperModel model) {
+        Long ttlSeconds = getConfig(model, ConfigPropertyKey.CACHE_TTL_SECONDS, Long.class);
+        Long negativeTtlSeconds = getConfig(model, ConfigPropertyKey.NEGATIVE_CACHE_TTL_SECONDS, Long.class);
+        return new TeamApiCachePolicy(
+                ttlSeconds == null ? TeamApiCachePolicy.DEFAULT_TTL : Duration.ofSeconds(ttlSeconds),
+                negativeTtlSeconds == null ? TeamApiCachePolicy.DEFAULT_NEGATIVE_TTL : Duration.ofSeconds(negativeTtlSeconds),
+                RefreshAheadPolicy.of(
+                        getConfig(model, ConfigPropertyKey.REFRESH_AHEAD_FRACTION, Double.class),
+                        getConfigInteger(model, ConfigPropertyKey.MAX_REFRESHES_PER_SECOND)));
+    }
+
+    RetryPolicy retryPolicy(ProtocolMapperModel model) {
+        return RetryPolicy.of(
+                getConfigInteger(model, ConfigPropertyKey.MAX_RETRIES),
+                getConfig(model, ConfigPropertyKey.ATTEMPT_TIMEOUT_MILLIS, Long.class),
+                getConfig(model, ConfigPropertyKey.LATENCY_BUDGET_MILLIS, Long.class));
+    }
+
+    /**
+     * @return the synthetic team directory config, or null if the fixed demo teams should be used
+     */
+    SyntheticTeamDirectory.Config syntheticDirectoryConfig(ProtocolMapperModel model) {
+        Integer users = getConfigInteger(model, ConfigPropertyKey.DUMMY_USERS);
+        Integer teams = getConfigInteger(model, ConfigPropertyKey.DUMMY_TEAMS);
+        if (users == null && teams == null) {
+            return null;
+        }
+
+        return SyntheticTeamDirectory.Config.of(
+                getConfig(model, ConfigPropertyKey.DUMMY_SEED, Long.class),
+                users,
+                teams,
+                getConfig(model, ConfigPropertyKey.DUMMY_ZIPF_EXPONENT, Double.class),
+                getConfigInteger(model, ConfigPropertyKey.DUMMY_TEAM_NAME_LENGTH),
+                getConfig(model, ConfigPropertyKey.DUMMY_LATENCY_MILLIS, Long.class));
+    }
+
+    private static List<ProviderConfigProperty> concat(List<ProviderConfigProperty> configProperties,
+                                                       ProviderConfigProperty... additionalConfigProperties) {
+        List<ProviderConfigProperty> all = new ArrayList<>(configProperties);
+        all.addAll(Arrays.asList(additionalConfigProperties));
+        return all;
+    }
+
+    private static List<String> patterns(String config) {
+        return isBlank(config)
+                ? List.of()
+                : Arrays.stream(config.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toList();
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
     }
 
     DaplaTeamApiService teamApiService(ProtocolMapperModel model) {
         String apiImpl = getConfigString(model, ConfigPropertyKey.API_IMPL);
+        String location = FileDaplaTeamApiService.NAME.equals(apiImpl)
+                ? getConfigString(model, ConfigPropertyKey.TEAM_FILE)
+                : getConfigString(model, ConfigPropertyKey.API_URL);
+        DaplaTeamApiService primary = teamApiService(model, apiImpl, location);
+
+        List<String> additionalSources = patterns(getConfigString(model, ConfigPropertyKey.ADDITIONAL_SOURCES));
+        if (additionalSources.isEmpty()) {
+            return primary;
+        }
+
+        Duration sourceTimeout = sourceTimeout(model);
+        List<ScatterGatherDaplaTeamApiService.Source> sources = new ArrayList<>();
+        sources.add(new ScatterGatherDaplaTeamApiService.Source(apiImpl, primary, sourceTimeout));
+        for (String additionalSource : additionalSources) {
+            sources.add(source(model, additionalSource, sourceTimeout));
+        }
+        return new ScatterGatherDaplaTeamApiService(sources);
+    }
+
+    /**
+     * Timeout of sources without an explicit timeout. Defaults to the latency budget of the retry policy, which
+     * already bounds a Team API call including its retries.
+     */
+    Duration sourceTimeout(ProtocolMapperModel model) {
+        Long sourceTimeoutMillis = getConfig(model, ConfigPropertyKey.SOURCE_TIMEOUT_MILLIS, Long.class);
+        return sourceTimeoutMillis == null
+                ? retryPolicy(model).latencyBudget()
+                : Duration.ofMillis(sourceTimeoutMillis);
+    }
+
+    /**
+     * URLs of the HTTP based Team APIs used by a mapper configuration, including additional sources
+     */
+    public static List<String> teamApiUrls(ProtocolMapperModel model) {
+        Map<String, String> config = model.getConfig() == null ? Map.of() : model.getConfig();
+        List<String> urls = new ArrayList<>();
+        String apiImpl = config.getOrDefault(ConfigPropertyKey.API_IMPL, MockyDaplaTeamApiService.NAME);
+        if (MockyDaplaTeamApiService.NAME.equals(apiImpl)) {
+            urls.add(config.getOrDefault(ConfigPropertyKey.API_URL, DEFAULT_API_URL));
+        }
+        for (String source : patterns(config.get(ConfigPropertyKey.ADDITIONAL_SOURCES))) {
+            String[] parts = source.split("\\|");
+            if (parts.length >= 2 && MockyDaplaTeamApiService.NAME.equals(parts[0].trim())) {
+                urls.add(parts[1].trim());
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Parse a team source on the form {@code <impl>|<url or file>[|<timeout millis>]}
+     */
+    ScatterGatherDaplaTeamApiService.Source source(ProtocolMapperModel model, String sourceSpec, Duration defaultTimeout) {
+        String[] parts = sourceSpec.split("\\|");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new DaplaKeycloakException("Invalid team source '" + sourceSpec + "'. Expected <impl>|<url or file>[|<timeout millis>]");
+        }
+
+        String apiImpl = parts[0].trim();
+        String location = parts[1].trim();
+        Duration timeout = defaultTimeout;
+        if (parts.length == 3) {
+            try {
+                timeout = Duration.ofMillis(Long.parseLong(parts[2].trim()));
+            }
+            catch (NumberFormatException e) {
+                throw new DaplaKeycloakException("Invalid timeout in team source '" + sourceSpec + "'", e);
+            }
+        }
+        return new ScatterGatherDaplaTeamApiService.Source(apiImpl + "|" + location,
+                teamApiService(model, apiImpl, location), timeout);
+    }
+
+    private DaplaTeamApiService teamApiService(ProtocolMapperModel model, String apiImpl, String location) {
         debugLog(model, "Use " + apiImpl + " Dapla Team API implementation");
 
         if (MockyDaplaTeamApiService.NAME.equals(apiImpl)) {
-            String apiUrl = getConfigString(model, ConfigPropertyKey.API_URL);
-            debugLog(model, "Dapla Team API url: " + apiUrl);
-            return new MockyDaplaTeamApiService(apiUrl);
+            debugLog(model, "Dapla Team API url: " + location);
+            return MockyDaplaTeamApiService.forConfig(
+                    new TeamApiConfig(location, teamApiLimits(model), cachePolicy(model), retryPolicy(model)));
         }
         else if (DummyDaplaTeamApiService.NAME.equals(apiImpl)) {
-            return new DummyDaplaTeamApiService();
+            SyntheticTeamDirectory.Config syntheticDirectoryConfig = syntheticDirectoryConfig(model);
+            return syntheticDirectoryConfig == null
+                    ? new DummyDaplaTeamApiService()
+                    : new DummyDaplaTeamApiService(syntheticDirectoryConfig);
+        }
+        else if (FileDaplaTeamApiService.NAME.equals(apiImpl)) {
+            debugLog(model, "Team file: " + location);
+            return new FileDaplaTeamApiService(location, teamApiLimits(model));
         }
         else {
             throw new DaplaKeycloakException("Unsupported Team API implementation: " + apiImpl);
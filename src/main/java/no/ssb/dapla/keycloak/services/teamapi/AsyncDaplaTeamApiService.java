@@ -0,0 +1,54 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Non-blocking variant of {@link DaplaTeamApiService}. Lookups return immediately, and complete when the Team API
+ * has answered, so that many lookups can be in flight without a thread waiting for each of them.
+ *
+ * Stages complete exceptionally with the same exceptions as the blocking methods throw, such as
+ * {@link UnknownTeamApiUserException}. Cancelling a stage ({@code toCompletableFuture().cancel(true)}) abandons
+ * the lookup, and cancels the HTTP call if one is in flight.
+ *
+ * Use {@link BlockingDaplaTeamApiService} to call an async service from blocking code.
+ */
+public interface AsyncDaplaTeamApiService {
+
+    /**
+     * @param user the user's Dapla principal (email)
+     */
+    CompletionStage<TeamsAndGroups> getTeamsAndGroupsAsync(String user);
+
+    /**
+     * @param user the user's Dapla principal (email)
+     */
+    default CompletionStage<List<String>> getTeamsAsync(String user) {
+        return map(getTeamsAndGroupsAsync(user), TeamsAndGroups::teams);
+    }
+
+    /**
+     * @param user the user's Dapla principal (email)
+     */
+    default CompletionStage<List<String>> getGroupsAsync(String user) {
+        return map(getTeamsAndGroupsAsync(user), TeamsAndGroups::groups);
+    }
+
+    /**
+     * Map the result of a lookup. Cancelling the mapped stage cancels the lookup, which a plain
+     * {@code thenApply} would not.
+     */
+    private static <T, R> CompletionStage<R> map(CompletionStage<T> lookup, Function<? super T, ? extends R> mapper) {
+        CompletableFuture<T> source = lookup.toCompletableFuture();
+        CompletableFuture<R> mapped = source.thenApply(mapper);
+        mapped.whenComplete((result, failure) -> {
+            if (mapped.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return mapped;
+    }
+
+}
@@ -0,0 +1,82 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import no.ssb.dapla.keycloak.DaplaKeycloakException;
+import no.ssb.dapla.keycloak.tracing.MappingTimer;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Adapts an {@link AsyncDaplaTeamApiService} to the blocking {@link DaplaTeamApiService} interface.
+ *
+ * Exceptions that a lookup completed with are rethrown as is. If the waiting thread is interrupted, such as when
+ * Keycloak abandons the token request, the lookup is cancelled.
+ */
+public class BlockingDaplaTeamApiService implements DaplaTeamApiService {
+
+    private final AsyncDaplaTeamApiService async;
+
+    public BlockingDaplaTeamApiService(AsyncDaplaTeamApiService async) {
+        this.async = async;
+    }
+
+    @Override
+    public List<String> getTeams(String user) {
+        return await(async.getTeamsAsync(user));
+    }
+
+    @Override
+    public List<String> getGroups(String user) {
+        return await(async.getGroupsAsync(user));
+    }
+
+    @Override
+    public TeamsAndGroups getTeamsAndGroups(String user) {
+        return await(async.getTeamsAndGroupsAsync(user));
+    }
+
+    /**
+     * Wait for a lookup to complete, cancelling it if the waiting thread is interrupted. Only time spent waiting is
+     * timed as the HTTP phase of an ongoing mapping, so lookups served from cache are not counted as HTTP.
+     */
+    public static <T> T await(CompletionStage<T> stage) {
+        CompletableFuture<T> future = stage.toCompletableFuture();
+        if (future.isDone()) {
+            return join(future);
+        }
+        return MappingTimer.time(MappingTimer.Phase.HTTP, () -> join(future));
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new DaplaKeycloakException("Interrupted while waiting for Team API", e);
+        }
+        catch (CancellationException e) {
+            throw new DaplaKeycloakException("Team API lookup was cancelled", e);
+        }
+        catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    static RuntimeException rethrow(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        throw new DaplaKeycloakException("Error fetching teams", cause);
+    }
+
+}
@@ -0,0 +1,31 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+import java.io.IOException;
+
+/**
+ * Source that keeps track of the number of bytes read from it
+ */
+class CountingSource extends ForwardingSource {
+    private long bytesRead;
+
+    CountingSource(Source delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public long read(Buffer sink, long byteCount) throws IOException {
+        long read = super.read(sink, byteCount);
+        if (read > 0) {
+            bytesRead += read;
+        }
+        return read;
+    }
+
+    long bytesRead() {
+        return bytesRead;
+    }
+}
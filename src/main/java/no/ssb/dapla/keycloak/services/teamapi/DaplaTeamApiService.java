@@ -1,11 +1,45 @@
 package no.ssb.dapla.keycloak.services.teamapi;
 
+import no.ssb.dapla.keycloak.DaplaKeycloakException;
+
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public interface DaplaTeamApiService {
 
-    List<String> getTeams();
+    /**
+     * @param user the user's Dapla principal (email)
+     */
+    List<String> getTeams(String user);
+
+    /**
+     * @param user the user's Dapla principal (email)
+     */
+    List<String> getGroups(String user);
 
-    List<String> getGroups();
+    /**
+     * Retrieve both teams and groups. The two lookups are executed concurrently, so the latency is bounded by
+     * the slower of the two calls rather than their sum. Implementations that can retrieve both in a single
+     * round-trip should override this.
+     *
+     * @param user the user's Dapla principal (email)
+     */
+    default TeamsAndGroups getTeamsAndGroups(String user) {
+        CompletableFuture<List<String>> groups = CompletableFuture.supplyAsync(() -> getGroups(user), TeamApiExecutor.get());
+        try {
+            List<String> teams = getTeams(user);
+            return new TeamsAndGroups(teams, groups.join());
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new DaplaKeycloakException("Error fetching groups", e.getCause());
+        }
+        finally {
+            groups.cancel(false);
+        }
+    }
 
 }
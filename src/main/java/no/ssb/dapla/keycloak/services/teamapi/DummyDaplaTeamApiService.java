@@ -4,28 +4,53 @@ import org.jboss.logging.Logger;
 
 import java.util.List;
 
+/**
+ * Offline Team API replacement.
+ *
+ * By default, every user gets the same two demo teams. If configured with a {@link SyntheticTeamDirectory.Config},
+ * teams are instead generated by a deterministic synthetic directory, which is useful for load testing.
+ */
 public class DummyDaplaTeamApiService implements DaplaTeamApiService {
     private static final Logger log = Logger.getLogger(DummyDaplaTeamApiService.class);
     public static final String NAME = "Dummy";
 
+    private static final TeamsAndGroups DEMO_TEAMS_AND_GROUPS = new TeamsAndGroups(
+            List.of(
+                    "demo-enhjoern-æ",
+                    "demo-enhjoern-ø"
+            ),
+            List.of(
+                    "demo-enhjoern-æ-data-admins",
+                    "demo-enhjoern-æ-developers",
+                    "demo-enhjoern-ø-developers"
+            ));
+
+    private final SyntheticTeamDirectory syntheticDirectory;
+
     public DummyDaplaTeamApiService() {
         log.debug("Using DummyDaplaTeamApiService");
+        this.syntheticDirectory = null;
+    }
+
+    public DummyDaplaTeamApiService(SyntheticTeamDirectory.Config syntheticDirectoryConfig) {
+        log.debug("Using DummyDaplaTeamApiService (" + syntheticDirectoryConfig + ")");
+        this.syntheticDirectory = SyntheticTeamDirectory.of(syntheticDirectoryConfig);
+    }
+
+    @Override
+    public List<String> getTeams(String user) {
+        return getTeamsAndGroups(user).teams();
     }
 
     @Override
-    public List<String> getTeams() {
-        return List.of(
-                "demo-enhjoern-æ",
-                "demo-enhjoern-ø"
-        );
+    public List<String> getGroups(String user) {
+        return getTeamsAndGroups(user).groups();
     }
 
     @Override
-    public List<String> getGroups() {
-        return List.of(
-                "demo-enhjoern-æ-data-admins",
-                "demo-enhjoern-æ-developers",
-                "demo-enhjoern-ø-developers"
-        );
+    public TeamsAndGroups getTeamsAndGroups(String user) {
+        return syntheticDirectory == null
+                ? DEMO_TEAMS_AND_GROUPS
+                : syntheticDirectory.lookup(user);
     }
 }
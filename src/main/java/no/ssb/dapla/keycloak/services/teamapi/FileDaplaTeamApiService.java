@@ -0,0 +1,215 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import no.ssb.dapla.keycloak.DaplaKeycloakException;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Team API implementation that reads team memberships from a local NDJSON file (see {@link FileTeamIndex} for
+ * the format). Useful for air-gapped and test environments.
+ *
+ * The file is indexed once per path, and shared by all service instances using it. It is watched for changes, and
+ * a new index is swapped in atomically when the file is replaced. Lookups in progress keep using the previous
+ * index. If the limits for a path change, the file is indexed again and the previous watcher is stopped. At most
+ * {@link #MAX_TEAM_FILES} files are kept indexed and watched.
+ */
+public class FileDaplaTeamApiService implements DaplaTeamApiService {
+
+    public static final String NAME = "File";
+
+    static final String WATCHER_THREAD_NAME = "dapla-team-file-watcher";
+
+    private static final Logger log = Logger.getLogger(FileDaplaTeamApiService.class);
+    private static final Map<Path, TeamFile> TEAM_FILES = new ConcurrentHashMap<>();
+
+    /** Max number of team files kept, as each one holds an index and a watcher thread */
+    static final int MAX_TEAM_FILES = 16;
+
+    private final TeamFile teamFile;
+
+    public FileDaplaTeamApiService(String path) {
+        this(path, TeamApiLimits.DEFAULT);
+    }
+
+    public FileDaplaTeamApiService(String path, TeamApiLimits limits) {
+        if (path == null || path.isBlank()) {
+            throw new DaplaKeycloakException("Team file path must be specified");
+        }
+        this.teamFile = teamFile(Path.of(path).toAbsolutePath().normalize(), limits);
+    }
+
+    /**
+     * Get the team file for a path, indexing it if it is new or if the limits changed. A replaced or dropped team
+     * file stops watching for changes, but instances still using it keep serving its last index.
+     */
+    private static TeamFile teamFile(Path path, TeamApiLimits limits) {
+        TeamFile teamFile = TEAM_FILES.get(path);
+        if (teamFile != null && teamFile.limits.equals(limits)) {
+            return teamFile;
+        }
+        synchronized (TEAM_FILES) {
+            TeamFile previous = TEAM_FILES.get(path);
+            if (previous != null && previous.limits.equals(limits)) {
+                return previous;
+            }
+            teamFile = new TeamFile(path, limits);
+            if (previous != null) {
+                TEAM_FILES.remove(path);
+                previous.close();
+            }
+            Iterator<TeamFile> teamFiles = TEAM_FILES.values().iterator();
+            while (TEAM_FILES.size() >= MAX_TEAM_FILES && teamFiles.hasNext()) {
+                teamFiles.next().close();
+                teamFiles.remove();
+            }
+            TEAM_FILES.put(path, teamFile);
+            return teamFile;
+        }
+    }
+
+    static int teamFileCount() {
+        return TEAM_FILES.size();
+    }
+
+    @Override
+    public List<String> getTeams(String user) {
+        return getTeamsAndGroups(user).teams();
+    }
+
+    @Override
+    public List<String> getGroups(String user) {
+        return getTeamsAndGroups(user).groups();
+    }
+
+    @Override
+    public TeamsAndGroups getTeamsAndGroups(String user) {
+        TeamsAndGroups teamsAndGroups = teamFile.index().lookup(user);
+        if (teamsAndGroups == null) {
+            throw new UnknownTeamApiUserException();
+        }
+        return teamsAndGroups;
+    }
+
+    /**
+     * @return the number of users in the currently loaded index
+     */
+    public int size() {
+        return teamFile.index().size();
+    }
+
+    /**
+     * A team file with its current index, and a watcher that reloads the index when the file changes
+     */
+    private static class TeamFile {
+        private final Path path;
+        private final TeamApiLimits limits;
+        private final AtomicReference<FileTeamIndex> index = new AtomicReference<>();
+        private volatile WatchService watchService;
+
+        TeamFile(Path path, TeamApiLimits limits) {
+            this.path = path;
+            this.limits = limits;
+            index.set(load());
+            watch();
+        }
+
+        FileTeamIndex index() {
+            return index.get();
+        }
+
+        private FileTeamIndex load() {
+            long start = System.currentTimeMillis();
+            FileTeamIndex loaded = FileTeamIndex.load(path, limits);
+            log.info("Loaded " + loaded.size() + " users from team file " + path
+                    + " in " + (System.currentTimeMillis() - start) + "ms");
+            return loaded;
+        }
+
+        private void reload() {
+            try {
+                index.set(load());
+            }
+            catch (RuntimeException e) {
+                log.warn("Unable to reload team file " + path + ". Keep using the previously loaded version.", e);
+            }
+        }
+
+        private void watch() {
+            WatchService watchService;
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+                path.getParent().register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+            catch (IOException e) {
+                log.warn("Unable to watch team file " + path + " for changes", e);
+                return;
+            }
+
+            this.watchService = watchService;
+            Thread watcher = new Thread(() -> watchLoop(watchService), WATCHER_THREAD_NAME);
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+
+        /**
+         * Stop watching the file for changes
+         */
+        void close() {
+            WatchService watching = watchService;
+            if (watching == null) {
+                return;
+            }
+            try {
+                watching.close();
+            }
+            catch (IOException e) {
+                log.warn("Unable to stop watching team file " + path, e);
+            }
+        }
+
+        private void watchLoop(WatchService watchService) {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= path.getFileName().equals(event.context());
+                    }
+                    key.reset();
+
+                    if (changed) {
+                        // Let a burst of change events settle before reloading
+                        Thread.sleep(100);
+                        WatchKey burst;
+                        while ((burst = watchService.poll()) != null) {
+                            burst.pollEvents();
+                            burst.reset();
+                        }
+                        reload();
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ClosedWatchServiceException e) {
+                // Stop watching
+            }
+        }
+    }
+
+}
@@ -0,0 +1,235 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import no.ssb.dapla.keycloak.DaplaKeycloakException;
+import no.ssb.dapla.keycloak.utils.Json;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index from user to team memberships in an NDJSON file, such as:
+ * <pre>
+ * {"user": "jane.doe@ssb.no", "teams": ["team-a", "team-b"], "groups": ["team-a-developers"]}
+ * {"user": "john.doe@ssb.no", "teams": ["team-b"]}
+ * </pre>
+ *
+ * The file is memory-mapped, and only an open-addressing hash table of line positions is kept on the heap. The
+ * table has 16 bytes per slot and between 2 and 4 slots per user, so it takes 32 to 64 bytes per user. A user's line is parsed when the user is looked up. If a user is listed more
+ * than once, the last line wins.
+ *
+ * The file must not be modified in place while mapped. Replace it atomically (write a new file and rename it)
+ * instead.
+ */
+class FileTeamIndex {
+
+    private final Path path;
+    private final MappedByteBuffer mapped;
+    private final TeamApiLimits limits;
+    private final int[] hashes;
+    private final long[] lineStarts;
+    private final int[] lineLengths;
+    private final int mask;
+    private int size;
+
+    private FileTeamIndex(Path path, MappedByteBuffer mapped, TeamApiLimits limits, int lineCount) {
+        this.path = path;
+        this.mapped = mapped;
+        this.limits = limits;
+        // The smallest power of two with at least 2 slots per line, so the table is at most half full
+        int capacity = Integer.highestOneBit(Math.max(4, lineCount * 2) - 1) << 1;
+        this.hashes = new int[capacity];
+        this.lineStarts = new long[capacity];
+        this.lineLengths = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    static FileTeamIndex load(Path path, TeamApiLimits limits) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new DaplaKeycloakException("Team file " + path + " is too large (" + fileSize + " bytes)");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+            FileTeamIndex index = new FileTeamIndex(path, mapped, limits, countLines(mapped));
+            index.build();
+            return index;
+        }
+        catch (IOException e) {
+            throw new DaplaKeycloakException("Error loading team file " + path, e);
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the user's teams and groups, or null if the user is not listed
+     */
+    TeamsAndGroups lookup(String user) {
+        int hash = hash(user);
+        for (int slot = hash & mask; lineLengths[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash) {
+                Line line = parseLine(lineStarts[slot], lineLengths[slot], true);
+                if (user.equals(line.user)) {
+                    return line.teamsAndGroups();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int countLines(MappedByteBuffer mapped) {
+        int lines = 1;
+        for (int i = 0; i < mapped.limit(); i++) {
+            if (mapped.get(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private void build() {
+        int lineStart = 0;
+        int limit = mapped.limit();
+        for (int i = 0; i <= limit; i++) {
+            if (i == limit || mapped.get(i) == '\n') {
+                int length = i - lineStart;
+                if (!isBlank(lineStart, length)) {
+                    Line line = parseLine(lineStart, length, false);
+                    if (line.user == null) {
+                        throw new DaplaKeycloakException("Missing user at offset " + lineStart + " in team file " + path);
+                    }
+                    insert(line.user, lineStart, length);
+                }
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    private void insert(String user, long lineStart, int lineLength) {
+        int hash = hash(user);
+        int slot = hash & mask;
+        while (lineLengths[slot] != 0) {
+            if (hashes[slot] == hash && user.equals(parseLine(lineStarts[slot], lineLengths[slot], false).user)) {
+                break; // Replace the previous line for the same user
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (lineLengths[slot] == 0) {
+            size++;
+        }
+        hashes[slot] = hash;
+        lineStarts[slot] = lineStart;
+        lineLengths[slot] = lineLength;
+    }
+
+    private boolean isBlank(int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            if (!Character.isWhitespace(mapped.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a line. Teams and groups are skipped unless requested. The line is parsed in a single pass, so the user
+     * is not known until the whole line has been read. Exceeding the limits is therefore only reported when the
+     * line's teams and groups are used, see {@link Line#teamsAndGroups()}, and never for another user whose line
+     * happens to share a hash slot.
+     */
+    private Line parseLine(long start, int length, boolean includeTeamsAndGroups) {
+        try (JsonParser parser = Json.factory().createParser(new ByteBufferBackedInputStream(mapped.slice((int) start, length)))) {
+            Line line = new Line();
+            TeamApiResponseAdapter.expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken value = parser.nextToken();
+                if (field.equals("user") && isString(value)) {
+                    line.user = parser.getText();
+                }
+                else if (field.equals("teams") && includeTeamsAndGroups) {
+                    line.teams = readStringList(parser, value, "teams", line);
+                }
+                else if (field.equals("groups") && includeTeamsAndGroups) {
+                    line.groups = readStringList(parser, value, "groups", line);
+                }
+                else {
+                    parser.skipChildren();
+                }
+            }
+            TeamApiResponseAdapter.expect(parser, parser.currentToken(), JsonToken.END_OBJECT);
+            return line;
+        }
+        catch (IOException e) {
+            throw new DaplaKeycloakException("Error parsing line at offset " + start + " in team file " + path, e);
+        }
+    }
+
+    private List<String> readStringList(JsonParser parser, JsonToken token, String fieldName, Line line) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return List.of();
+        }
+
+        TeamApiResponseAdapter.expect(parser, token, JsonToken.START_ARRAY);
+        List<String> values = new ArrayList<>();
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (!isString(token)) {
+                throw new JsonParseException(parser, "Expected a string in " + fieldName + " but was " + token);
+            }
+            if (values.size() >= limits.maxElements()) {
+                line.tooManyElements = fieldName;
+                continue;
+            }
+            values.add(parser.getText());
+        }
+        return values;
+    }
+
+    /**
+     * Strings and numbers are accepted as strings
+     */
+    private static boolean isString(JsonToken token) {
+        return token == JsonToken.VALUE_STRING || token.isNumeric();
+    }
+
+    /**
+     * Hash with extra bit mixing, since slots are selected from the lowest bits
+     */
+    private static int hash(String user) {
+        int h = user.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private class Line {
+        String user;
+        List<String> teams = List.of();
+        List<String> groups = List.of();
+        /** The field with more elements than the limits allow, if any */
+        String tooManyElements;
+
+        TeamsAndGroups teamsAndGroups() {
+            if (tooManyElements != null) {
+                throw new TeamApiResponseTooLargeException("Team file entry has more than "
+                        + limits.maxElements() + " " + tooManyElements);
+            }
+            return new TeamsAndGroups(teams, groups);
+        }
+    }
+
+}
@@ -1,57 +1,402 @@
 package no.ssb.dapla.keycloak.services.teamapi;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.opentelemetry.context.Context;
 import no.ssb.dapla.keycloak.DaplaKeycloakException;
-import no.ssb.dapla.keycloak.utils.Json;
+import no.ssb.dapla.keycloak.jfr.TeamApiLookupEvent;
+import no.ssb.dapla.keycloak.utils.Urls;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okio.Okio;
 import org.jboss.logging.Logger;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
-public class MockyDaplaTeamApiService implements DaplaTeamApiService {
+public class MockyDaplaTeamApiService implements DaplaTeamApiService, AsyncDaplaTeamApiService {
 
     public static final String NAME = "Mocky";
     public static final String TEAMS_ENDPOINT = "v3/b1e6cf15-337d-404d-8e34-4a2fd3fc3d74";
 
+    /**
+     * Header identifying the user whose teams are requested. The user is sent in a header rather than in the URL,
+     * so that emails do not end up in access logs, proxy logs or traces.
+     */
+    public static final String USER_HEADER = "X-Dapla-User";
+
+    /** Status codes indicating a transient failure, where a retry may succeed */
+    private static final Set<Integer> RETRYABLE_STATUS_CODES = Set.of(429, 500, 502, 503, 504);
+
     private static final Logger log = Logger.getLogger(MockyDaplaTeamApiService.class);
-    private final OkHttpClient httpClient = new OkHttpClient();
+    private static final Map<TeamApiConfig, MockyDaplaTeamApiService> SERVICES = new ConcurrentHashMap<>();
+
+    private final OkHttpClient httpClient = TeamApiHttpClient.get();
     private final URI teamApiUrl;
+    private final TeamApiLimits limits;
+    private final TeamApiResponseAdapter responseAdapter;
+    private final TeamApiCache cache;
+    private final TeamApiCachePolicy cachePolicy;
+    private final RefreshAheadPolicy refreshAheadPolicy;
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * Get the shared service instance for a config. Instances are stateless apart from the shared cache, so one
+     * instance per config is enough, and creating one per token would be wasted work.
+     */
+    public static MockyDaplaTeamApiService forConfig(TeamApiConfig config) {
+        return SERVICES.computeIfAbsent(config, MockyDaplaTeamApiService::new);
+    }
 
     public MockyDaplaTeamApiService(String teamApiUrl) {
-        this.teamApiUrl = URI.create(teamApiUrl);
-        log.debug("Using MockyDaplaTeamApiService (" + teamApiUrl + ")");
+        this(teamApiUrl, TeamApiLimits.DEFAULT);
+    }
+
+    public MockyDaplaTeamApiService(String teamApiUrl, TeamApiLimits limits) {
+        this(teamApiUrl, limits, TeamApiCachePolicy.DEFAULT);
+    }
+
+    public MockyDaplaTeamApiService(String teamApiUrl, TeamApiLimits limits, TeamApiCachePolicy cachePolicy) {
+        this(teamApiUrl, limits, cachePolicy, RetryPolicy.DEFAULT);
+    }
+
+    public MockyDaplaTeamApiService(String teamApiUrl, TeamApiLimits limits, TeamApiCachePolicy cachePolicy, RetryPolicy retryPolicy) {
+        this(new TeamApiConfig(teamApiUrl, limits, cachePolicy, retryPolicy));
+    }
+
+    public MockyDaplaTeamApiService(TeamApiConfig config) {
+        this.teamApiUrl = URI.create(config.teamApiUrl());
+        this.limits = config.limits();
+        this.responseAdapter = TeamApiResponseAdapter.forLimits(limits);
+        this.cache = TeamApiCache.forConfig(config);
+        this.cachePolicy = config.cachePolicy();
+        this.refreshAheadPolicy = cachePolicy.refreshAhead();
+        this.retryPolicy = config.retryPolicy();
+        cache.registerLoader(this::refresh);
+        log.debug("Using MockyDaplaTeamApiService (" + config + ")");
+    }
+
+    public TeamApiStats stats() {
+        return cache.stats();
     }
 
     @Override
-    public List<String> getTeams() {
-        Request request = new Request.Builder()
-                .url(teamApiUrl.resolve(TEAMS_ENDPOINT).toString())
-                .build();
-        log.debug("Request: " + request);
-        try (Response response = httpClient.newCall(request).execute()) {
-            log.debug("Response: " + response);
+    public List<String> getTeams(String user) {
+        return getTeamsAndGroups(user).teams();
+    }
 
-            if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
-            log.debug("Response body: " + response.body());
+    /**
+     * The teams endpoint also lists the user's access groups, so groups are read from the same response.
+     */
+    @Override
+    public List<String> getGroups(String user) {
+        return getTeamsAndGroups(user).groups();
+    }
+
+    /**
+     * Retrieve teams and groups using a single round-trip.
+     */
+    @Override
+    public TeamsAndGroups getTeamsAndGroups(String user) {
+        return BlockingDaplaTeamApiService.await(getTeamsAndGroupsAsync(user));
+    }
 
-            TeamsWrapper res = Json.adapter(TeamsWrapper.class).fromJson(response.body().source());
-            return res.teams;
+    /**
+     * Serve the user's teams and groups from cache if fresh. Otherwise retrieve them from the Team API, using a
+     * conditional request if a previous response is cached, so that an unchanged response is revalidated
+     * without being transferred again.
+     *
+     * The stage completes exceptionally with {@link UnknownTeamApiUserException} if the Team API does not know the
+     * user. This is also cached.
+     */
+    @Override
+    public CompletableFuture<TeamsAndGroups> getTeamsAndGroupsAsync(String user) {
+        TeamApiLookupEvent event = new TeamApiLookupEvent();
+        event.begin();
+        event.callerThread = Thread.currentThread();
+        TeamApiStats stats = cache.stats();
+        stats.lookup();
+        if (refreshAheadPolicy.isEnabled()) {
+            cache.touch(user);
         }
-        catch (Exception e) {
-            throw new DaplaKeycloakException("Error fetching teams from " + teamApiUrl, e);
+
+        TeamApiCache.Entry cached = cache.get(user);
+        if (cache.isFresh(cached)) {
+            try {
+                if (cached.isUnknownUser()) {
+                    event.cacheResult = "negative_hit";
+                    stats.negativeCacheHit();
+                    return CompletableFuture.failedFuture(new UnknownTeamApiUserException());
+                }
+                event.cacheResult = "hit";
+                stats.cacheHit();
+                return CompletableFuture.completedFuture(cached.value());
+            }
+            finally {
+                commit(event);
+            }
         }
+
+        event.cacheResult = "miss";
+        CompletableFuture<TeamsAndGroups> result = fetch(user, cached, event);
+        result.whenComplete((teamsAndGroups, failure) -> commit(event));
+        return result;
     }
 
-    @Override
-    public List<String> getGroups() {
-        throw new UnsupportedOperationException("Retrieving a user's access groups is not yet implemented");
+    /**
+     * Retrieve a user's teams and groups from the Team API, regardless of whether the cached entry is fresh
+     */
+    void refresh(String user) {
+        TeamApiLookupEvent event = new TeamApiLookupEvent();
+        event.begin();
+        event.callerThread = Thread.currentThread();
+        event.cacheResult = "refresh";
+        try {
+            BlockingDaplaTeamApiService.await(fetch(user, cache.get(user), event));
+        }
+        finally {
+            commit(event);
+        }
+    }
+
+    private void commit(TeamApiLookupEvent event) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.apiUrl = teamApiUrl.toString();
+            event.commit();
+        }
+    }
+
+    /**
+     * Retrieve a user's teams and groups, retrying transient failures according to the retry policy. No thread
+     * is blocked while waiting for a response or for a retry. Cancelling the returned future cancels the call in
+     * flight, or the scheduled retry.
+     *
+     * The attempt timeout only runs once OkHttp starts a call, so a timer bounds the whole lookup by the latency
+     * budget, including time spent queued in the OkHttp dispatcher.
+     */
+    private CompletableFuture<TeamsAndGroups> fetch(String user, TeamApiCache.Entry cached, TeamApiLookupEvent event) {
+        Lookup lookup = new Lookup(user, cached, teamsRequest(user, cached),
+                System.nanoTime() + retryPolicy.latencyBudget().toNanos(),
+                cache.retryBudget(retryPolicy.retryBudgetRatio()), event);
+        lookup.retryBudget.onCall();
+        lookup.deadlineTimer = TeamApiExecutor.scheduler().schedule(() -> lookup.result.completeExceptionally(
+                        new DaplaKeycloakException("Error fetching teams from " + teamApiUrl + " (latency budget exhausted)")),
+                retryPolicy.latencyBudget().toNanos(), TimeUnit.NANOSECONDS);
+        lookup.result.whenComplete((teamsAndGroups, failure) -> {
+            lookup.deadlineTimer.cancel(false);
+            if (failure != null) {
+                lookup.cancel();
+            }
+        });
+        attempt(lookup, 0);
+        return lookup.result;
+    }
+
+    private void attempt(Lookup lookup, int retry) {
+        if (lookup.result.isDone()) {
+            return;
+        }
+
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(lookup.deadline - System.nanoTime());
+        execute(lookup, Math.min(retryPolicy.attemptTimeout().toMillis(), remainingMillis)).whenComplete((teamsAndGroups, failure) -> {
+            if (failure == null) {
+                lookup.result.complete(teamsAndGroups);
+                return;
+            }
+            if (!(failure instanceof IOException e)) {
+                lookup.result.completeExceptionally(failure);
+                return;
+            }
+            if (lookup.result.isDone()) {
+                return;
+            }
+
+            long backoffMillis = retryPolicy.backoffMillis(retry, ThreadLocalRandom.current().nextDouble());
+            boolean withinBudget = retry < retryPolicy.maxRetries()
+                    && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis) < lookup.deadline;
+            if (!withinBudget) {
+                lookup.result.completeExceptionally(new DaplaKeycloakException("Error fetching teams from " + teamApiUrl, e));
+                return;
+            }
+            if (!lookup.retryBudget.tryRetry()) {
+                cache.stats().retryDenied();
+                lookup.result.completeExceptionally(new DaplaKeycloakException(
+                        "Error fetching teams from " + teamApiUrl + " (retry budget exhausted)", e));
+                return;
+            }
+
+            log.debug("Retry " + (retry + 1) + " in " + backoffMillis + "ms after error: " + e);
+            cache.stats().retry();
+            lookup.scheduledRetry = TeamApiExecutor.scheduler()
+                    .schedule(() -> attempt(lookup, retry + 1), backoffMillis, TimeUnit.MILLISECONDS);
+        });
     }
 
-    static class TeamsWrapper {
-        List<String> teams;
+    /**
+     * Build the request, making it conditional if a previous response with validators is cached. The caller's
+     * tracing context is attached, as the call is executed on another thread.
+     */
+    private Request teamsRequest(String user, TeamApiCache.Entry cached) {
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(teamsUrl())
+                .header(USER_HEADER, user)
+                .tag(Context.class, Context.current());
+        if (cached != null && cached.hasValidators()) {
+            if (cached.etag() != null) {
+                requestBuilder.header("If-None-Match", cached.etag());
+            }
+            if (cached.lastModified() != null) {
+                requestBuilder.header("If-Modified-Since", cached.lastModified());
+            }
+        }
+        return requestBuilder.build();
+    }
+
+    /**
+     * Enqueue a single attempt. The future completes exceptionally with an {@link IOException} on transient
+     * failures that may succeed if retried.
+     */
+    private CompletableFuture<TeamsAndGroups> execute(Lookup lookup, long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            return CompletableFuture.failedFuture(new InterruptedIOException("Latency budget exhausted"));
+        }
+
+        boolean revalidation = lookup.cached != null && lookup.cached.hasValidators();
+        log.debug("Request: " + lookup.request.method() + " " + Urls.redact(lookup.request.url()));
+        cache.stats().request(revalidation);
+
+        Call call = httpClient.newCall(lookup.request);
+        call.timeout().timeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        lookup.event.attempts++;
+        lookup.event.statusCode = 0;
+        lookup.call = call;
+        if (lookup.result.isCancelled()) {
+            call.cancel();
+        }
+
+        CompletableFuture<TeamsAndGroups> attempt = new CompletableFuture<>();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                attempt.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    attempt.complete(handle(lookup, response, revalidation));
+                }
+                catch (JsonProcessingException e) {
+                    // A malformed response is not transient, so it must not be retried like a network failure
+                    attempt.completeExceptionally(new DaplaKeycloakException("Invalid response from " + teamApiUrl, e));
+                }
+                catch (IOException | DaplaKeycloakException e) {
+                    attempt.completeExceptionally(e);
+                }
+                catch (Exception e) {
+                    attempt.completeExceptionally(new DaplaKeycloakException("Error fetching teams from " + teamApiUrl, e));
+                }
+            }
+        });
+        return attempt;
+    }
+
+    /**
+     * Handle the response of an attempt
+     *
+     * @throws IOException on transient failures that may succeed if retried, or {@link JsonProcessingException} if
+     *                     the response body is not a valid Team API response
+     */
+    private TeamsAndGroups handle(Lookup lookup, Response response, boolean revalidation) throws IOException {
+        log.debug("Response: " + response.code() + " from " + Urls.redact(response.request().url()));
+        TeamApiStats stats = cache.stats();
+        String user = lookup.user;
+        lookup.event.statusCode = response.code();
+
+        if (revalidation && response.code() == 304) {
+            stats.notModified(lookup.cached.bodyBytes());
+            return cache.extend(user, lookup.cached, cachePolicy.ttlFor(lookup.cached.value())).value();
+        }
+
+        // The user is permanently unknown, so remember that instead of asking again on every token
+        if (response.code() == 404 || response.code() == 410) {
+            cache.putUnknownUser(user, cachePolicy.negativeTtl());
+            throw new UnknownTeamApiUserException();
+        }
+
+        if (RETRYABLE_STATUS_CODES.contains(response.code())) {
+            throw new IOException("Unexpected code " + response.code());
+        }
+        if (!response.isSuccessful()) {
+            throw new DaplaKeycloakException("Error fetching teams from " + teamApiUrl + ". Unexpected code " + response.code());
+        }
+        long contentLength = response.body().contentLength();
+        if (contentLength > limits.maxResponseBytes()) {
+            throw new TeamApiResponseTooLargeException("Team API response content length " + contentLength
+                    + " exceeds " + limits.maxResponseBytes() + " bytes");
+        }
+
+        CountingSource body = new CountingSource(response.body().source());
+        TeamsAndGroups teamsAndGroups = responseAdapter.parse(Okio.buffer(body));
+        stats.bytesReceived(body.bytesRead());
+        lookup.event.bytes += body.bytesRead();
+        cache.put(user, teamsAndGroups, response.header("ETag"), response.header("Last-Modified"),
+                body.bytesRead(), cachePolicy.ttlFor(teamsAndGroups));
+        return teamsAndGroups;
+    }
+
+    private HttpUrl teamsUrl() {
+        return HttpUrl.get(teamApiUrl.resolve(TEAMS_ENDPOINT).toString());
+    }
+
+    /**
+     * State of a lookup, shared by its attempts
+     */
+    private static class Lookup {
+        final String user;
+        final TeamApiCache.Entry cached;
+        final Request request;
+        final long deadline;
+        final RetryBudget retryBudget;
+        final TeamApiLookupEvent event;
+        final CompletableFuture<TeamsAndGroups> result = new CompletableFuture<>();
+        volatile Call call;
+        volatile ScheduledFuture<?> scheduledRetry;
+        volatile ScheduledFuture<?> deadlineTimer;
+
+        Lookup(String user, TeamApiCache.Entry cached, Request request, long deadline, RetryBudget retryBudget,
+               TeamApiLookupEvent event) {
+            this.user = user;
+            this.cached = cached;
+            this.request = request;
+            this.deadline = deadline;
+            this.retryBudget = retryBudget;
+            this.event = event;
+        }
+
+        void cancel() {
+            ScheduledFuture<?> retry = scheduledRetry;
+            if (retry != null) {
+                retry.cancel(false);
+            }
+            Call inFlight = call;
+            if (inFlight != null) {
+                inFlight.cancel();
+            }
+        }
     }
 
 }
@@ -0,0 +1,53 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+/**
+ * Controls when and how fast cache entries of active users are refreshed ahead of expiry.
+ *
+ * @param refreshFraction fraction of the TTL after which an entry is refreshed, such as 0.8. An additional random
+ *                        jitter of up to half the remaining TTL is added per entry, so that entries fetched at the
+ *                        same time are not refreshed at the same time. 0 disables refresh-ahead.
+ * @param maxRefreshesPerSecond max number of refreshes started per second
+ */
+public record RefreshAheadPolicy(double refreshFraction, int maxRefreshesPerSecond) {
+
+    public static final double DEFAULT_REFRESH_FRACTION = 0.8;
+    public static final int DEFAULT_MAX_REFRESHES_PER_SECOND = 10;
+
+    public static final RefreshAheadPolicy DISABLED = new RefreshAheadPolicy(0, 0);
+
+    public RefreshAheadPolicy {
+        if (refreshFraction < 0 || refreshFraction >= 1) {
+            throw new IllegalArgumentException("refreshFraction must be >= 0 and < 1");
+        }
+        if (maxRefreshesPerSecond < 0) {
+            throw new IllegalArgumentException("maxRefreshesPerSecond must not be negative");
+        }
+    }
+
+    /**
+     * Create a policy, falling back to defaults for unspecified (null) values
+     */
+    public static RefreshAheadPolicy of(Number refreshFraction, Number maxRefreshesPerSecond) {
+        return new RefreshAheadPolicy(
+                refreshFraction == null ? DEFAULT_REFRESH_FRACTION : refreshFraction.doubleValue(),
+                maxRefreshesPerSecond == null ? DEFAULT_MAX_REFRESHES_PER_SECOND : maxRefreshesPerSecond.intValue());
+    }
+
+    public boolean isEnabled() {
+        return refreshFraction > 0 && maxRefreshesPerSecond > 0;
+    }
+
+    /**
+     * @param ttlMillis the entry's time to live
+     * @param random a random number in [0, 1), used for jitter
+     * @return millis after fetching at which an entry should be refreshed
+     */
+    long refreshAfterMillis(long ttlMillis, double random) {
+        if (!isEnabled()) {
+            return ttlMillis;
+        }
+        double fraction = refreshFraction + random * (1 - refreshFraction) / 2;
+        return (long) (ttlMillis * fraction);
+    }
+
+}
@@ -0,0 +1,37 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+/**
+ * Token bucket limiting retries to a ratio of calls.
+ *
+ * Every call deposits {@code ratio} tokens and every retry withdraws one token. The bucket starts with, and never
+ * holds more than, a small number of tokens, so that retries stay possible when traffic is low. During an outage
+ * the bucket drains and calls fail fast after their first attempt instead of multiplying the load.
+ */
+class RetryBudget {
+
+    static final int MAX_TOKENS = 10;
+
+    private final double ratio;
+    private double tokens = MAX_TOKENS;
+
+    RetryBudget(double ratio) {
+        this.ratio = ratio;
+    }
+
+    double ratio() {
+        return ratio;
+    }
+
+    synchronized void onCall() {
+        tokens = Math.min(MAX_TOKENS, tokens + ratio);
+    }
+
+    synchronized boolean tryRetry() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+}
@@ -0,0 +1,72 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import java.time.Duration;
+
+/**
+ * Retry policy for idempotent Team API calls.
+ *
+ * Retries use exponential backoff with full jitter: before retry n (starting at 0), the call sleeps for a random
+ * duration between 0 and min(maxBackoff, baseBackoff * 2^n). A call (including all retries and backoffs) never
+ * takes longer than the latency budget, and each attempt is given at most the attempt timeout.
+ *
+ * @param maxRetries max number of retries after the first attempt. 0 disables retries.
+ * @param baseBackoff backoff cap for the first retry
+ * @param maxBackoff upper bound for any backoff
+ * @param attemptTimeout timeout for a single attempt, covering connect, write, read and body parsing
+ * @param latencyBudget total time a call may take, including all attempts and backoffs
+ * @param retryBudgetRatio max ratio of retries to calls over time, such as 0.1 for 10%. This prevents retries from
+ *                         multiplying the load on the Team API during an outage.
+ */
+public record RetryPolicy(int maxRetries,
+                          Duration baseBackoff,
+                          Duration maxBackoff,
+                          Duration attemptTimeout,
+                          Duration latencyBudget,
+                          double retryBudgetRatio) {
+
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final Duration DEFAULT_BASE_BACKOFF = Duration.ofMillis(50);
+    public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(1);
+    public static final Duration DEFAULT_ATTEMPT_TIMEOUT = Duration.ofSeconds(2);
+    public static final Duration DEFAULT_LATENCY_BUDGET = Duration.ofSeconds(5);
+    public static final double DEFAULT_RETRY_BUDGET_RATIO = 0.1;
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(DEFAULT_MAX_RETRIES, DEFAULT_BASE_BACKOFF,
+            DEFAULT_MAX_BACKOFF, DEFAULT_ATTEMPT_TIMEOUT, DEFAULT_LATENCY_BUDGET, DEFAULT_RETRY_BUDGET_RATIO);
+
+    public RetryPolicy {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative");
+        }
+        if (attemptTimeout.isNegative() || attemptTimeout.isZero() || latencyBudget.isNegative() || latencyBudget.isZero()) {
+            throw new IllegalArgumentException("attemptTimeout and latencyBudget must be positive");
+        }
+        if (retryBudgetRatio < 0) {
+            throw new IllegalArgumentException("retryBudgetRatio must not be negative");
+        }
+    }
+
+    /**
+     * Create a policy with default backoff and retry budget, falling back to defaults for unspecified (null) values
+     */
+    public static RetryPolicy of(Integer maxRetries, Long attemptTimeoutMillis, Long latencyBudgetMillis) {
+        return new RetryPolicy(
+                maxRetries == null ? DEFAULT_MAX_RETRIES : maxRetries,
+                DEFAULT_BASE_BACKOFF,
+                DEFAULT_MAX_BACKOFF,
+                attemptTimeoutMillis == null ? DEFAULT_ATTEMPT_TIMEOUT : Duration.ofMillis(attemptTimeoutMillis),
+                latencyBudgetMillis == null ? DEFAULT_LATENCY_BUDGET : Duration.ofMillis(latencyBudgetMillis),
+                DEFAULT_RETRY_BUDGET_RATIO);
+    }
+
+    /**
+     * @param retry the retry number, starting at 0
+     * @param random a random number in [0, 1)
+     * @return the backoff before the retry, in millis
+     */
+    long backoffMillis(int retry, double random) {
+        long cap = Math.min(maxBackoff.toMillis(), baseBackoff.toMillis() << Math.min(retry, 30));
+        return (long) (random * cap);
+    }
+
+}
@@ -0,0 +1,166 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import no.ssb.dapla.keycloak.DaplaKeycloakException;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Queries several Team API sources in parallel and merges their results.
+ *
+ * Every source has its own timeout, counted from when the lookup started. The merged result contains whatever
+ * arrived in time, so the latency is bounded by the slowest source that answers in time (or the longest timeout),
+ * not by the sum of all sources. Sources that time out or fail are left out of the result, and the lookup is
+ * counted as partial in {@link ScatterGatherStats}. A user unknown by one source just contributes no teams. The
+ * lookup only fails if no source answered.
+ */
+public class ScatterGatherDaplaTeamApiService implements DaplaTeamApiService {
+    private static final Logger log = Logger.getLogger(ScatterGatherDaplaTeamApiService.class);
+    private static final ScatterGatherStats STATS = new ScatterGatherStats();
+
+    private final List<Source> sources;
+
+    public ScatterGatherDaplaTeamApiService(List<Source> sources) {
+        if (sources.isEmpty()) {
+            throw new DaplaKeycloakException("At least one Team API source is required");
+        }
+        this.sources = List.copyOf(sources);
+    }
+
+    /**
+     * Stats shared by all scatter-gather lookups
+     */
+    public static ScatterGatherStats stats() {
+        return STATS;
+    }
+
+    @Override
+    public List<String> getTeams(String user) {
+        return merge(gather(user, service -> service.getTeams(user), TeamsAndGroups::teams));
+    }
+
+    @Override
+    public List<String> getGroups(String user) {
+        return merge(gather(user, service -> service.getGroups(user), TeamsAndGroups::groups));
+    }
+
+    @Override
+    public TeamsAndGroups getTeamsAndGroups(String user) {
+        List<TeamsAndGroups> results = gather(user, service -> service.getTeamsAndGroups(user), Function.identity());
+        return new TeamsAndGroups(
+                merge(results.stream().map(TeamsAndGroups::teams).toList()),
+                merge(results.stream().map(TeamsAndGroups::groups).toList()));
+    }
+
+    /**
+     * Call all sources in parallel and collect the results that arrive within each source's timeout. Sources that
+     * are {@link AsyncDaplaTeamApiService}s are called without occupying a thread, the others on the bounded
+     * {@link TeamApiExecutor#sources()} executor. A source that times out is cancelled, which cancels its HTTP call
+     * or interrupts its thread.
+     *
+     * @param lookup the lookup of a blocking source
+     * @param select the part of an async source's teams and groups to use
+     */
+    <T> List<T> gather(String user, Function<DaplaTeamApiService, T> lookup, Function<TeamsAndGroups, T> select) {
+        STATS.lookup();
+        long start = System.nanoTime();
+        List<Future<T>> futures = new ArrayList<>(sources.size());
+        // The futures to cancel when giving up on a source. Cancelling a derived future would not reach the call.
+        List<Future<?>> calls = new ArrayList<>(sources.size());
+        for (Source source : sources) {
+            if (source.service() instanceof AsyncDaplaTeamApiService async) {
+                CompletableFuture<TeamsAndGroups> call = async.getTeamsAndGroupsAsync(user).toCompletableFuture();
+                calls.add(call);
+                futures.add(call.thenApply(select));
+            }
+            else {
+                Future<T> call;
+                try {
+                    call = TeamApiExecutor.sources().submit(() -> lookup.apply(source.service()));
+                }
+                catch (RejectedExecutionException e) {
+                    call = CompletableFuture.failedFuture(e);
+                }
+                calls.add(call);
+                futures.add(call);
+            }
+        }
+
+        List<T> results = new ArrayList<>(sources.size());
+        int unknown = 0;
+        int missing = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            Source source = sources.get(i);
+            Future<T> future = futures.get(i);
+            try {
+                long remainingNanos = source.timeout().toNanos() - (System.nanoTime() - start);
+                results.add(future.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS));
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof UnknownTeamApiUserException) {
+                    unknown++;
+                }
+                else {
+                    missing++;
+                    STATS.sourceFailure(source.name());
+                    log.warn("Team API source " + source.name() + " failed: " + e.getCause());
+                }
+            }
+            catch (TimeoutException e) {
+                missing++;
+                calls.get(i).cancel(true);
+                STATS.sourceTimeout(source.name());
+                log.warn("Team API source " + source.name() + " did not answer within " + source.timeout().toMillis() + "ms");
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                calls.forEach(call -> call.cancel(true));
+                throw new DaplaKeycloakException("Interrupted while waiting for Team API sources", e);
+            }
+        }
+
+        if (results.isEmpty()) {
+            if (missing == 0) {
+                throw new UnknownTeamApiUserException();
+            }
+            throw new DaplaKeycloakException("None of the " + sources.size() + " Team API sources answered");
+        }
+        if (missing > 0) {
+            STATS.partialResult();
+        }
+        log.debug("Gathered " + results.size() + " of " + sources.size() + " Team API results (" + unknown + " unknown user) in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        return results;
+    }
+
+    /**
+     * Merge and deduplicate, keeping the order of first occurrence
+     */
+    static List<String> merge(Collection<List<String>> lists) {
+        Set<String> merged = new LinkedHashSet<>();
+        lists.forEach(merged::addAll);
+        return List.copyOf(merged);
+    }
+
+    /**
+     * @param name name used in logs and stats
+     * @param service the Team API service
+     * @param timeout max time to wait for the source, counted from the start of the lookup. For HTTP sources this
+     *                should not be shorter than the latency budget of their {@link RetryPolicy}, or retries are
+     *                cut short.
+     */
+    public record Source(String name, DaplaTeamApiService service, Duration timeout) {}
+
+}
@@ -0,0 +1,69 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for lookups across several Team API sources.
+ */
+public class ScatterGatherStats {
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder partialResults = new LongAdder();
+    private final Map<String, LongAdder> sourceTimeouts = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> sourceFailures = new ConcurrentHashMap<>();
+
+    void lookup() {
+        lookups.increment();
+    }
+
+    void partialResult() {
+        partialResults.increment();
+    }
+
+    void sourceTimeout(String source) {
+        sourceTimeouts.computeIfAbsent(source, s -> new LongAdder()).increment();
+    }
+
+    void sourceFailure(String source) {
+        sourceFailures.computeIfAbsent(source, s -> new LongAdder()).increment();
+    }
+
+    /** Number of scatter-gather lookups */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /** Number of lookups where at least one source timed out or failed */
+    public long getPartialResults() {
+        return partialResults.sum();
+    }
+
+    /** Number of timeouts per source */
+    public Map<String, Long> getSourceTimeouts() {
+        return sums(sourceTimeouts);
+    }
+
+    /** Number of failures per source */
+    public Map<String, Long> getSourceFailures() {
+        return sums(sourceFailures);
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> counters) {
+        Map<String, Long> sums = new TreeMap<>();
+        counters.forEach((source, counter) -> sums.put(source, counter.sum()));
+        return sums;
+    }
+
+    @Override
+    public String toString() {
+        return "ScatterGatherStats{" +
+                "lookups=" + getLookups() +
+                ", partialResults=" + getPartialResults() +
+                ", sourceTimeouts=" + getSourceTimeouts() +
+                ", sourceFailures=" + getSourceFailures() +
+                '}';
+    }
+}
@@ -0,0 +1,232 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deterministic, seedable synthetic team directory, for capacity and load testing without a network.
+ *
+ * Any user can be looked up. Users are mapped onto a fixed number of synthetic user profiles, so the directory
+ * behaves as if it held {@code users} distinct users. The number of teams per user follows a Zipf-like
+ * distribution (most users are in a few teams, some are in many), and so does the popularity of each team. The
+ * same config and user always give the same teams.
+ */
+public class SyntheticTeamDirectory {
+
+    /** Max number of directories kept, as each one holds the team names and distributions of its config */
+    static final int MAX_DIRECTORIES = 16;
+
+    private static final Map<Config, SyntheticTeamDirectory> DIRECTORIES = new ConcurrentHashMap<>();
+    private static final char[] NAME_CHARS = "abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    private final Config config;
+    private final String[] teamNames;
+    private final double[] teamPopularityCdf;
+    private final double[] teamsPerUserCdf;
+
+    private SyntheticTeamDirectory(Config config) {
+        this.config = config;
+        this.teamNames = teamNames(config);
+        this.teamPopularityCdf = zipfCdf(config.teams(), config.zipfExponent());
+        this.teamsPerUserCdf = zipfCdf(Math.min(config.teams(), config.maxTeamsPerUser()), config.zipfExponent());
+    }
+
+    /**
+     * Get the directory for a config. Directories are created once per distinct config, and at most
+     * {@link #MAX_DIRECTORIES} are kept. When a new config would exceed that, an arbitrary directory is dropped and
+     * is created again if its config is used again.
+     */
+    public static SyntheticTeamDirectory of(Config config) {
+        SyntheticTeamDirectory directory = DIRECTORIES.get(config);
+        if (directory != null) {
+            return directory;
+        }
+        synchronized (DIRECTORIES) {
+            Iterator<Config> configs = DIRECTORIES.keySet().iterator();
+            while (DIRECTORIES.size() >= MAX_DIRECTORIES && !DIRECTORIES.containsKey(config) && configs.hasNext()) {
+                configs.next();
+                configs.remove();
+            }
+            return DIRECTORIES.computeIfAbsent(config, SyntheticTeamDirectory::new);
+        }
+    }
+
+    static int directoryCount() {
+        return DIRECTORIES.size();
+    }
+
+    public TeamsAndGroups lookup(String user) {
+        simulateLatency();
+
+        int profile = Math.floorMod(user.hashCode(), config.users());
+        SplittableRandom random = new SplittableRandom(config.seed() * 31 + profile);
+        int teamCount = sample(teamsPerUserCdf, random) + 1;
+
+        // Draw distinct teams, weighted by team popularity
+        int[] teamIndexes = new int[teamCount];
+        double remainingWeight = 1;
+        for (int found = 0; found < teamCount; found++) {
+            int teamIndex = sampleWithout(teamPopularityCdf, teamIndexes, found, random.nextDouble() * remainingWeight);
+            remainingWeight = Math.max(0, remainingWeight - weight(teamPopularityCdf, teamIndex));
+            insertSorted(teamIndexes, found, teamIndex);
+        }
+
+        List<String> teams = new ArrayList<>(teamCount);
+        List<String> groups = new ArrayList<>(teamCount * 2);
+        for (int teamIndex : teamIndexes) {
+            String team = teamNames[teamIndex];
+            teams.add(team);
+            groups.add(team + "-developers");
+            if (random.nextInt(4) == 0) {
+                groups.add(team + "-data-admins");
+            }
+        }
+        return new TeamsAndGroups(teams, groups);
+    }
+
+    private void simulateLatency() {
+        if (config.latency().isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(config.latency().toMillis());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return a zero-based rank sampled from the cumulative distribution
+     */
+    private static int sample(double[] cdf, SplittableRandom random) {
+        return rankAt(cdf, random.nextDouble());
+    }
+
+    /**
+     * Inverse-CDF sampling without replacement: pick the rank at {@code target} in the distribution that remains
+     * when the already drawn ranks are removed. Walking the drawn ranks in ascending order, the target is shifted
+     * past the weight of each drawn rank at or before it. This takes a bounded number of steps however skewed the
+     * distribution is, unlike drawing until an undrawn rank comes up.
+     *
+     * @param drawn the ranks drawn so far, sorted, in {@code drawn[0..drawnCount)}
+     * @param target a number in [0, the remaining weight)
+     */
+    static int sampleWithout(double[] cdf, int[] drawn, int drawnCount, double target) {
+        int rank = rankAt(cdf, target);
+        for (int i = 0; i < drawnCount && drawn[i] <= rank; i++) {
+            target += weight(cdf, drawn[i]);
+            rank = rankAt(cdf, target);
+        }
+        // Rounding can push the target onto a drawn rank at the end of the distribution
+        while (Arrays.binarySearch(drawn, 0, drawnCount, rank) >= 0) {
+            rank = rank == 0 ? cdf.length - 1 : rank - 1;
+        }
+        return rank;
+    }
+
+    private static int rankAt(double[] cdf, double target) {
+        int pos = Arrays.binarySearch(cdf, target);
+        // An exact match means the target is at the upper bound of that rank, so it belongs to the next one
+        return Math.min(pos >= 0 ? pos + 1 : -(pos + 1), cdf.length - 1);
+    }
+
+    private static double weight(double[] cdf, int rank) {
+        return rank == 0 ? cdf[0] : cdf[rank] - cdf[rank - 1];
+    }
+
+    private static void insertSorted(int[] values, int length, int value) {
+        int i = length;
+        while (i > 0 && values[i - 1] > value) {
+            values[i] = values[i - 1];
+            i--;
+        }
+        values[i] = value;
+    }
+
+    /**
+     * Cumulative Zipf distribution over ranks 1..n, where rank k has weight 1/k^exponent
+     */
+    static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int k = 1; k <= n; k++) {
+            sum += 1 / Math.pow(k, exponent);
+            cdf[k - 1] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    /**
+     * Generate unique team names, such as 'team-a-qxbnf', padded with random letters to the configured length
+     */
+    private static String[] teamNames(Config config) {
+        SplittableRandom random = new SplittableRandom(config.seed());
+        String[] names = new String[config.teams()];
+        for (int i = 0; i < names.length; i++) {
+            StringBuilder name = new StringBuilder("team-").append(Integer.toString(i, 36)).append('-');
+            while (name.length() < config.teamNameLength()) {
+                name.append(NAME_CHARS[random.nextInt(NAME_CHARS.length)]);
+            }
+            names[i] = name.toString();
+        }
+        return names;
+    }
+
+    /**
+     * @param seed seed for all random choices
+     * @param users number of distinct synthetic users
+     * @param teams number of teams
+     * @param maxTeamsPerUser max number of teams a user can be member of
+     * @param zipfExponent skew of the teams per user and team popularity distributions (0 is uniform, 1 is classic Zipf)
+     * @param teamNameLength min length of team names
+     * @param latency simulated latency per lookup
+     */
+    public record Config(long seed, int users, int teams, int maxTeamsPerUser, double zipfExponent,
+                         int teamNameLength, Duration latency) {
+
+        public static final long DEFAULT_SEED = 42;
+        public static final int DEFAULT_USERS = 10_000;
+        public static final int DEFAULT_TEAMS = 500;
+        public static final int DEFAULT_MAX_TEAMS_PER_USER = 50;
+        public static final double DEFAULT_ZIPF_EXPONENT = 1.0;
+        public static final int DEFAULT_TEAM_NAME_LENGTH = 20;
+
+        public Config {
+            if (users <= 0 || teams <= 0 || maxTeamsPerUser <= 0) {
+                throw new IllegalArgumentException("users, teams and maxTeamsPerUser must be positive");
+            }
+            if (zipfExponent < 0) {
+                throw new IllegalArgumentException("zipfExponent must not be negative");
+            }
+            if (latency == null || latency.isNegative()) {
+                throw new IllegalArgumentException("latency must not be negative");
+            }
+        }
+
+        /**
+         * Create a config, falling back to defaults for unspecified (null) values
+         */
+        public static Config of(Long seed, Integer users, Integer teams, Double zipfExponent,
+                                Integer teamNameLength, Long latencyMillis) {
+            return new Config(
+                    seed == null ? DEFAULT_SEED : seed,
+                    users == null ? DEFAULT_USERS : users,
+                    teams == null ? DEFAULT_TEAMS : teams,
+                    DEFAULT_MAX_TEAMS_PER_USER,
+                    zipfExponent == null ? DEFAULT_ZIPF_EXPONENT : zipfExponent,
+                    teamNameLength == null ? DEFAULT_TEAM_NAME_LENGTH : teamNameLength,
+                    latencyMillis == null ? Duration.ZERO : Duration.ofMillis(latencyMillis));
+        }
+    }
+
+}
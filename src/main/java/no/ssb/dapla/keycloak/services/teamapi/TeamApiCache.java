@@ -0,0 +1,349 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-user cache of Team API responses, shared by all service instances with the same {@link TeamApiConfig}.
+ *
+ * Entries are kept after they expire, so that their validators (ETag / Last-Modified) can be used to revalidate
+ * them with a conditional request instead of downloading the full response again.
+ */
+public class TeamApiCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    /** Share of the entries evicted when a full cache is swept, so that sweeps are rare */
+    static final double EVICTION_BATCH_FRACTION = 0.1;
+
+    private static final Map<TeamApiConfig, TeamApiCache> CACHES = new ConcurrentHashMap<>();
+
+    /** Rough per-object overhead, used for memory estimates */
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final TeamApiConfig config;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastAccess = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Due> refreshQueue = new ConcurrentSkipListSet<>(Due.ORDER);
+    private final TeamApiStats stats = new TeamApiStats();
+    private final TeamApiRefreshScheduler refreshScheduler;
+    private final int maxEntries;
+    private final LongSupplier clock;
+    private volatile RefreshAheadPolicy refreshAheadPolicy = RefreshAheadPolicy.DISABLED;
+    private volatile RetryBudget retryBudget;
+    private volatile TeamApiRefreshScheduler.Refresher loader;
+
+    TeamApiCache(int maxEntries, LongSupplier clock) {
+        this(null, maxEntries, clock);
+    }
+
+    TeamApiCache(TeamApiConfig config, int maxEntries, LongSupplier clock) {
+        this.config = config;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.refreshScheduler = new TeamApiRefreshScheduler(this, clock);
+    }
+
+    /**
+     * Get the shared cache for a Team API configuration
+     */
+    public static TeamApiCache forConfig(TeamApiConfig config) {
+        return CACHES.computeIfAbsent(config, key -> new TeamApiCache(key, DEFAULT_MAX_ENTRIES, System::currentTimeMillis));
+    }
+
+    /**
+     * @return the caches of all configurations of a Team API that has been used, or an empty list
+     */
+    public static List<TeamApiCache> existing(String teamApiUrl) {
+        return CACHES.values().stream()
+                .filter(cache -> cache.config.teamApiUrl().equals(teamApiUrl))
+                .toList();
+    }
+
+    /**
+     * @return the configuration of the service instances sharing this cache
+     */
+    public TeamApiConfig config() {
+        return config;
+    }
+
+    public TeamApiStats stats() {
+        return stats;
+    }
+
+    /**
+     * Set how to (re)load a user's entry from the Team API, used for warm-up and, if the config enables it, for
+     * refresh ahead of expiry. Only the first loader is registered: all services sharing the cache have the same
+     * config, so any of them will do, and later service instances must not replace the refresher.
+     */
+    synchronized void registerLoader(TeamApiRefreshScheduler.Refresher loader) {
+        if (this.loader != null) {
+            return;
+        }
+        this.loader = loader;
+        RefreshAheadPolicy policy = config == null ? RefreshAheadPolicy.DISABLED : config.cachePolicy().refreshAhead();
+        if (policy.isEnabled()) {
+            setRefreshAheadPolicy(policy);
+            refreshScheduler.start(policy, loader);
+        }
+    }
+
+    /**
+     * @return how to (re)load a user's entry from the Team API, or null if no service has been created yet
+     */
+    public TeamApiRefreshScheduler.Refresher loader() {
+        return loader;
+    }
+
+    void setRefreshAheadPolicy(RefreshAheadPolicy policy) {
+        this.refreshAheadPolicy = policy;
+    }
+
+    /**
+     * Get the retry budget shared by all calls to the Team API
+     */
+    RetryBudget retryBudget(double ratio) {
+        RetryBudget budget = retryBudget;
+        if (budget == null || budget.ratio() != ratio) {
+            budget = new RetryBudget(ratio);
+            retryBudget = budget;
+        }
+        return budget;
+    }
+
+    TeamApiRefreshScheduler refreshScheduler() {
+        return refreshScheduler;
+    }
+
+    /**
+     * @return the (possibly expired) entry for a user, or null if the user has no entry
+     */
+    public Entry get(String user) {
+        return entries.get(user);
+    }
+
+    /**
+     * Record that a user has been issued a token, which makes the user eligible for refresh-ahead. The user's
+     * entry is queued by when it is due for refresh, so that the refresh scheduler never has to scan the cache.
+     */
+    public void touch(String user) {
+        lastAccess.put(user, clock.getAsLong());
+        Entry entry = entries.get(user);
+        if (entry != null) {
+            refreshQueue.add(new Due(entry.refreshAt(), user));
+        }
+    }
+
+    /**
+     * Take the next active user whose entry is due for refresh ahead of expiry. Queued users whose entries have
+     * since been replaced or removed, or who have not been looked up since the entry was fetched, are dropped.
+     * They are queued again on their next lookup.
+     *
+     * @return the user, or null if no entry is due
+     */
+    String pollDueForRefresh(long now) {
+        for (Due due = refreshQueue.ceiling(Due.FIRST); due != null && due.refreshAt() <= now; due = refreshQueue.ceiling(Due.FIRST)) {
+            if (!refreshQueue.remove(due)) {
+                continue;
+            }
+            Entry entry = entries.get(due.user());
+            if (entry != null && entry.refreshAt() == due.refreshAt() && isActive(due.user(), entry)) {
+                return due.user();
+            }
+        }
+        return null;
+    }
+
+    int refreshQueueSize() {
+        return refreshQueue.size();
+    }
+
+    /**
+     * @return true if the user has been looked up since the entry was fetched
+     */
+    boolean isActive(String user, Entry entry) {
+        Long accessedAt = lastAccess.get(user);
+        return accessedAt != null && accessedAt >= entry.fetchedAt();
+    }
+
+    public boolean isFresh(Entry entry) {
+        return entry != null && clock.getAsLong() < entry.expiresAt();
+    }
+
+    public Entry put(String user, TeamsAndGroups value, String etag, String lastModified, long bodyBytes, Duration ttl) {
+        if (entries.size() >= maxEntries && !entries.containsKey(user)) {
+            makeRoom();
+        }
+        Entry entry = newEntry(value, etag, lastModified, bodyBytes, ttl);
+        entries.put(user, entry);
+        return entry;
+    }
+
+    /**
+     * Remember that the Team API does not know a user
+     */
+    public Entry putUnknownUser(String user, Duration ttl) {
+        return put(user, null, null, null, 0, ttl);
+    }
+
+    /**
+     * Extend the lifetime of an entry that was revalidated by the Team API
+     */
+    public Entry extend(String user, Entry entry, Duration ttl) {
+        Entry extended = newEntry(entry.value(), entry.etag(), entry.lastModified(), entry.bodyBytes(), ttl);
+        entries.put(user, extended);
+        return extended;
+    }
+
+    private Entry newEntry(TeamsAndGroups value, String etag, String lastModified, long bodyBytes, Duration ttl) {
+        long now = clock.getAsLong();
+        long ttlMillis = ttl.toMillis();
+        return new Entry(value, etag, lastModified, bodyBytes, now, now + ttlMillis,
+                now + refreshAheadPolicy.refreshAfterMillis(ttlMillis, ThreadLocalRandom.current().nextDouble()));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void invalidate(String user) {
+        entries.remove(user);
+        lastAccess.remove(user);
+    }
+
+    /**
+     * Remove the entries of all members of a team
+     *
+     * @return the number of removed entries
+     */
+    public int invalidateTeam(String team) {
+        int removed = 0;
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            TeamsAndGroups value = e.getValue().value();
+            if (value != null && value.teams().contains(team) && entries.remove(e.getKey(), e.getValue())) {
+                lastAccess.remove(e.getKey());
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Rough estimate of the heap used by the cached entries
+     */
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            bytes += ENTRY_OVERHEAD_BYTES + stringBytes(e.getKey()) + e.getValue().estimatedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return epoch millis when the oldest entry was retrieved or revalidated, or null if the cache is empty
+     */
+    public Long oldestFetchedAt() {
+        return entries.values().stream()
+                .map(Entry::fetchedAt)
+                .min(Long::compare)
+                .orElse(null);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+        lastAccess.clear();
+        refreshQueue.clear();
+    }
+
+    /**
+     * Remove expired entries, and if the cache is still nearly full, the least recently used entries, so that
+     * {@link #EVICTION_BATCH_FRACTION} of the capacity is free. A sweep walks and sorts the whole cache, but as it
+     * frees a batch at a time, the cost per put stays small. Only entries removed while still fresh count as
+     * evictions.
+     */
+    private synchronized void makeRoom() {
+        if (entries.size() < maxEntries) {
+            return;
+        }
+        long now = clock.getAsLong();
+        int sizeBefore = entries.size();
+        entries.values().removeIf(e -> e.expiresAt() <= now);
+        int sizeAfterExpiry = entries.size();
+
+        int target = maxEntries - Math.max(1, (int) (maxEntries * EVICTION_BATCH_FRACTION));
+        if (sizeAfterExpiry > target) {
+            List<Map.Entry<String, Long>> byLastUse = new ArrayList<>(sizeAfterExpiry);
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                byLastUse.add(Map.entry(e.getKey(), lastUsed(e.getKey(), e.getValue())));
+            }
+            byLastUse.sort(Map.Entry.comparingByValue());
+            for (int i = 0; i < byLastUse.size() && entries.size() > target; i++) {
+                entries.remove(byLastUse.get(i).getKey());
+            }
+        }
+        lastAccess.keySet().retainAll(entries.keySet());
+        stats.expirations(Math.max(0, sizeBefore - sizeAfterExpiry));
+        stats.evictions(Math.max(0, sizeAfterExpiry - entries.size()));
+    }
+
+    /**
+     * @return epoch millis when a user was last looked up, or if lookups are not tracked, when the entry was fetched
+     */
+    private long lastUsed(String user, Entry entry) {
+        Long accessedAt = lastAccess.get(user);
+        return accessedAt == null ? entry.fetchedAt() : Math.max(accessedAt, entry.fetchedAt());
+    }
+
+    private static long stringBytes(String s) {
+        return s == null ? 0 : 40 + s.length();
+    }
+
+    /**
+     * A user queued for refresh, ordered by when the entry is due
+     */
+    private record Due(long refreshAt, String user) {
+        static final Comparator<Due> ORDER = Comparator.comparingLong(Due::refreshAt).thenComparing(Due::user);
+        static final Due FIRST = new Due(Long.MIN_VALUE, "");
+    }
+
+    /**
+     * @param value the cached teams and groups, or null if the user is unknown by the Team API
+     * @param etag the ETag response header, if any
+     * @param lastModified the Last-Modified response header, if any
+     * @param bodyBytes the size of the response body, used to account for bytes saved by revalidation
+     * @param fetchedAt epoch millis when the entry was retrieved or last revalidated
+     * @param expiresAt epoch millis after which the entry must be revalidated
+     * @param refreshAt epoch millis after which the entry may be refreshed ahead of expiry
+     */
+    public record Entry(TeamsAndGroups value, String etag, String lastModified, long bodyBytes,
+                        long fetchedAt, long expiresAt, long refreshAt) {
+        public boolean isUnknownUser() {
+            return value == null;
+        }
+
+        public boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+
+        long estimatedBytes() {
+            long bytes = ENTRY_OVERHEAD_BYTES + stringBytes(etag) + stringBytes(lastModified);
+            if (value != null) {
+                for (String team : value.teams()) {
+                    bytes += stringBytes(team);
+                }
+                for (String group : value.groups()) {
+                    bytes += stringBytes(group);
+                }
+            }
+            return bytes;
+        }
+    }
+
+}
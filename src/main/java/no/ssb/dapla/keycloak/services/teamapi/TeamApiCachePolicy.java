@@ -0,0 +1,49 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import java.time.Duration;
+
+/**
+ * How Team API responses are cached.
+ *
+ * @param ttl for how long a cached response is used before it is revalidated with the Team API
+ * @param negativeTtl for how long negative results (no teams, or a user unknown by the Team API) are cached.
+ *                    This is typically shorter than the ttl, so that new team members get their teams sooner.
+ * @param refreshAhead when and how fast entries of active users are refreshed ahead of expiry
+ */
+public record TeamApiCachePolicy(Duration ttl, Duration negativeTtl, RefreshAheadPolicy refreshAhead) {
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+    public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofMinutes(1);
+
+    public static final TeamApiCachePolicy DEFAULT = new TeamApiCachePolicy(DEFAULT_TTL, DEFAULT_NEGATIVE_TTL,
+            new RefreshAheadPolicy(RefreshAheadPolicy.DEFAULT_REFRESH_FRACTION, RefreshAheadPolicy.DEFAULT_MAX_REFRESHES_PER_SECOND));
+
+    public TeamApiCachePolicy {
+        if (ttl == null || ttl.isNegative()) {
+            throw new IllegalArgumentException("ttl must not be negative");
+        }
+        if (negativeTtl == null || negativeTtl.isNegative()) {
+            throw new IllegalArgumentException("negativeTtl must not be negative");
+        }
+        if (refreshAhead == null) {
+            refreshAhead = RefreshAheadPolicy.DISABLED;
+        }
+    }
+
+    /**
+     * Cache policy without refresh-ahead, caching negative results for the default negative ttl (or the ttl if
+     * that is shorter)
+     */
+    public static TeamApiCachePolicy of(Duration ttl) {
+        return new TeamApiCachePolicy(ttl, ttl.compareTo(DEFAULT_NEGATIVE_TTL) < 0 ? ttl : DEFAULT_NEGATIVE_TTL,
+                RefreshAheadPolicy.DISABLED);
+    }
+
+    /**
+     * @return the ttl to use for a result. Negative results (no teams) use the negative ttl.
+     */
+    public Duration ttlFor(TeamsAndGroups value) {
+        return value == null || value.teams().isEmpty() ? negativeTtl : ttl;
+    }
+
+}
@@ -0,0 +1,78 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import org.jboss.logging.Logger;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the Team API cache entries of many users in parallel, such as before an expected login peak.
+ */
+public class TeamApiCacheWarmer {
+    private static final Logger log = Logger.getLogger(TeamApiCacheWarmer.class);
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+    public static final int MAX_CONCURRENCY = 32;
+
+    private TeamApiCacheWarmer() {}
+
+    /**
+     * Load the entries of the given users, with at most {@code concurrency} Team API calls in flight at a time.
+     * Blocks until all users have been loaded.
+     */
+    public static WarmUpResult warmUp(TeamApiRefreshScheduler.Refresher loader, List<String> users, int concurrency) {
+        long start = System.nanoTime();
+        Semaphore permits = new Semaphore(Math.max(1, Math.min(concurrency, MAX_CONCURRENCY)));
+        AtomicInteger warmed = new AtomicInteger();
+        AtomicInteger unknown = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[users.size()];
+        try {
+            for (int i = 0; i < users.size(); i++) {
+                String user = users.get(i);
+                permits.acquire();
+                futures[i] = CompletableFuture.runAsync(() -> {
+                    try {
+                        loader.refresh(user);
+                        warmed.incrementAndGet();
+                    }
+                    catch (UnknownTeamApiUserException e) {
+                        unknown.incrementAndGet();
+                    }
+                    catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                        log.debug("Warm-up of " + user + " failed", e);
+                    }
+                    finally {
+                        permits.release();
+                    }
+                }, TeamApiExecutor.get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (CompletableFuture<?> future : futures) {
+            if (future != null) {
+                future.join();
+            }
+        }
+        return new WarmUpResult(users.size(), warmed.get(), unknown.get(), failed.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * @param requested number of users to warm up
+     * @param warmed number of users whose entries were loaded
+     * @param unknown number of users unknown by the Team API (cached as such)
+     * @param failed number of users that could not be loaded
+     * @param durationMillis duration of the warm-up
+     */
+    public record WarmUpResult(int requested, int warmed, int unknown, int failed, long durationMillis) {}
+
+}
@@ -0,0 +1,38 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+/**
+ * Configuration of an HTTP based Team API client.
+ *
+ * Team API caches are shared per distinct configuration, so that mapper configurations with different limits,
+ * cache policies or retry policies never see each other's entries, TTLs or retry budgets.
+ *
+ * @param teamApiUrl root URL of the Team API
+ * @param limits upper bounds for responses
+ * @param cachePolicy how responses are cached
+ * @param retryPolicy how transient failures are retried
+ */
+public record TeamApiConfig(String teamApiUrl, TeamApiLimits limits, TeamApiCachePolicy cachePolicy, RetryPolicy retryPolicy) {
+
+    public TeamApiConfig {
+        if (teamApiUrl == null) {
+            throw new IllegalArgumentException("teamApiUrl must not be null");
+        }
+        if (limits == null) {
+            limits = TeamApiLimits.DEFAULT;
+        }
+        if (cachePolicy == null) {
+            cachePolicy = TeamApiCachePolicy.DEFAULT;
+        }
+        if (retryPolicy == null) {
+            retryPolicy = RetryPolicy.DEFAULT;
+        }
+    }
+
+    /**
+     * Everything but the URL, for telling caches of the same Team API apart
+     */
+    public String settings() {
+        return limits + ", " + cachePolicy + ", " + retryPolicy;
+    }
+
+}
@@ -0,0 +1,71 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import io.opentelemetry.context.Context;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executor for running Dapla Team API calls concurrently.
+ *
+ * Threads are daemon threads, so that the executor never prevents Keycloak from shutting down. Tasks run in the
+ * tracing context of the submitting thread, so that spans started by a task are children of the caller's span.
+ */
+public class TeamApiExecutor {
+
+    private static final ExecutorService EXECUTOR = Context.taskWrapping(
+            Executors.newCachedThreadPool(new DaemonThreadFactory("dapla-team-api-")));
+    /** Max number of threads running blocking Team API sources, see {@link #sources()} */
+    static final int MAX_SOURCE_THREADS = 64;
+
+    private static final ExecutorService SOURCES = Context.taskWrapping(new ThreadPoolExecutor(0, MAX_SOURCE_THREADS,
+            60, TimeUnit.SECONDS, new SynchronousQueue<>(), new DaemonThreadFactory("dapla-team-api-source-")));
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("dapla-team-api-scheduler-"));
+
+    private TeamApiExecutor() {}
+
+    public static ExecutorService get() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Bounded executor for blocking lookups that the caller may give up on. Use {@link ExecutorService#submit}, so
+     * that {@code cancel(true)} on the returned future interrupts the lookup. A source that ignores interrupts can
+     * at most hold {@link #MAX_SOURCE_THREADS} threads. When all of them are busy, new tasks are rejected with a
+     * {@link java.util.concurrent.RejectedExecutionException} rather than queued.
+     */
+    public static ExecutorService sources() {
+        return SOURCES;
+    }
+
+    /**
+     * Single-threaded scheduler for periodic background tasks. Tasks must be short, and hand off any blocking
+     * work to {@link #get()}.
+     */
+    public static ScheduledExecutorService scheduler() {
+        return SCHEDULER;
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        DaemonThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import no.ssb.dapla.keycloak.tracing.TracingInterceptor;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.util.List;
+
+/**
+ * Holder of the OkHttpClient shared by all Team API service instances.
+ *
+ * Sharing the client lets all Team API calls reuse the same connection pool, so that calls to the same host are
+ * multiplexed over a single HTTP/2 connection when the server supports it. OkHttp transparently requests and
+ * decompresses gzip encoded responses. Every call is traced, see {@link TracingInterceptor}.
+ *
+ * Lookups are enqueued rather than executed on the caller's thread, so the dispatcher's limits on concurrent
+ * calls apply. They are raised well above OkHttp's defaults (5 per host), so that calls are bounded by their
+ * timeouts rather than queued behind each other.
+ */
+public class TeamApiHttpClient {
+
+    static final int MAX_CONCURRENT_CALLS = 256;
+
+    private static final OkHttpClient CLIENT = new OkHttpClient.Builder()
+            .dispatcher(dispatcher())
+            .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .addInterceptor(new TracingInterceptor())
+            .build();
+
+    private TeamApiHttpClient() {}
+
+    public static OkHttpClient get() {
+        return CLIENT;
+    }
+
+    private static Dispatcher dispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_CONCURRENT_CALLS);
+        dispatcher.setMaxRequestsPerHost(MAX_CONCURRENT_CALLS);
+        return dispatcher;
+    }
+
+}
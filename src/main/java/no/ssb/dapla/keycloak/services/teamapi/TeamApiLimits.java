@@ -0,0 +1,35 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+/**
+ * Upper bounds for Dapla Team API responses. Responses exceeding the limits are rejected, so that a
+ * misbehaving Team API cannot make Keycloak allocate arbitrarily large amounts of memory.
+ *
+ * @param maxResponseBytes max number of bytes read from a response body
+ * @param maxElements max number of elements in each list (such as teams or groups) of a response
+ */
+public record TeamApiLimits(long maxResponseBytes, int maxElements) {
+
+    public static final long DEFAULT_MAX_RESPONSE_BYTES = 1024 * 1024;
+    public static final int DEFAULT_MAX_ELEMENTS = 1000;
+
+    public static final TeamApiLimits DEFAULT = new TeamApiLimits(DEFAULT_MAX_RESPONSE_BYTES, DEFAULT_MAX_ELEMENTS);
+
+    public TeamApiLimits {
+        if (maxResponseBytes <= 0) {
+            throw new IllegalArgumentException("maxResponseBytes must be positive");
+        }
+        if (maxElements <= 0) {
+            throw new IllegalArgumentException("maxElements must be positive");
+        }
+    }
+
+    /**
+     * Create limits, falling back to defaults for unspecified (null) values
+     */
+    public static TeamApiLimits of(Number maxResponseBytes, Number maxElements) {
+        return new TeamApiLimits(
+                maxResponseBytes == null ? DEFAULT_MAX_RESPONSE_BYTES : maxResponseBytes.longValue(),
+                maxElements == null ? DEFAULT_MAX_ELEMENTS : maxElements.intValue());
+    }
+
+}
@@ -0,0 +1,111 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import org.jboss.logging.Logger;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Background scheduler that refreshes the cached teams of active users before the entries expire, so that token
+ * issuance for active users rarely has to wait for the Team API.
+ *
+ * Once per second, entries that are due for refresh (see {@link RefreshAheadPolicy}) are refreshed
+ * asynchronously, but only for users that have been issued a token since the entry was fetched. The cache queues
+ * such users by when their entries are due, so a tick only visits due entries rather than the whole cache. The
+ * number of refreshes started per second is capped, so that refreshing never causes load spikes on the Team API.
+ */
+public class TeamApiRefreshScheduler {
+
+    private static final Logger log = Logger.getLogger(TeamApiRefreshScheduler.class);
+    static final long TICK_MILLIS = 1000;
+
+    private final TeamApiCache cache;
+    private final LongSupplier clock;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile RefreshAheadPolicy policy = RefreshAheadPolicy.DISABLED;
+    private volatile Refresher refresher;
+    private ScheduledFuture<?> task;
+
+    TeamApiRefreshScheduler(TeamApiCache cache, LongSupplier clock) {
+        this.cache = cache;
+        this.clock = clock;
+    }
+
+    synchronized void start(RefreshAheadPolicy policy, Refresher refresher) {
+        configure(policy, refresher);
+        if (policy.isEnabled() && task == null) {
+            log.debug("Start Team API refresh-ahead scheduler (" + policy + ")");
+            task = TeamApiExecutor.scheduler().scheduleWithFixedDelay(this::tickSafely, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        else if (!policy.isEnabled() && task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    void configure(RefreshAheadPolicy policy, Refresher refresher) {
+        this.policy = policy;
+        this.refresher = refresher;
+    }
+
+    private void tickSafely() {
+        try {
+            tick();
+        }
+        catch (RuntimeException e) {
+            log.warn("Team API refresh-ahead failed", e);
+        }
+    }
+
+    /**
+     * Start refreshing entries that are due, up to the max number of refreshes per tick
+     *
+     * @return the number of refreshes started
+     */
+    int tick() {
+        RefreshAheadPolicy currentPolicy = this.policy;
+        Refresher currentRefresher = this.refresher;
+        if (!currentPolicy.isEnabled() || currentRefresher == null) {
+            return 0;
+        }
+
+        long now = clock.getAsLong();
+        int budget = (int) Math.max(1, currentPolicy.maxRefreshesPerSecond() * TICK_MILLIS / 1000);
+        int started = 0;
+        String user;
+        while (started < budget && (user = cache.pollDueForRefresh(now)) != null) {
+            if (!inFlight.add(user)) {
+                continue;
+            }
+
+            started++;
+            cache.stats().refreshAhead();
+            String dueUser = user;
+            TeamApiExecutor.get().execute(() -> {
+                try {
+                    currentRefresher.refresh(dueUser);
+                }
+                catch (RuntimeException ex) {
+                    log.debug("Unable to refresh teams for " + dueUser + " ahead of expiry", ex);
+                }
+                finally {
+                    inFlight.remove(dueUser);
+                }
+            });
+        }
+        return started;
+    }
+
+    @FunctionalInterface
+    public interface Refresher {
+
+        /**
+         * Retrieve a user's teams and groups from the Team API and update the cache
+         */
+        void refresh(String user);
+    }
+
+}
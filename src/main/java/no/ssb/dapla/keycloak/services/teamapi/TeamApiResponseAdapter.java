@@ -0,0 +1,145 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import no.ssb.dapla.keycloak.utils.Json;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming parser and writer for Dapla Team API responses.
+ *
+ * Only the 'teams' and 'groups' fields are extracted. Any other fields are skipped without being
+ * materialized. The number of bytes read and the number of list elements are capped according to the
+ * {@link TeamApiLimits}, and a {@link TeamApiResponseTooLargeException} is thrown if a response exceeds them.
+ *
+ * Adapters are immutable and thread-safe, and are cached per distinct limits.
+ */
+public class TeamApiResponseAdapter {
+
+    private static final Map<TeamApiLimits, TeamApiResponseAdapter> ADAPTERS = new ConcurrentHashMap<>();
+
+    private final TeamApiLimits limits;
+
+    private TeamApiResponseAdapter(TeamApiLimits limits) {
+        this.limits = limits;
+    }
+
+    public static TeamApiResponseAdapter forLimits(TeamApiLimits limits) {
+        return ADAPTERS.computeIfAbsent(limits, TeamApiResponseAdapter::new);
+    }
+
+    /**
+     * Parse a response body, reading at most {@link TeamApiLimits#maxResponseBytes()} bytes from the source.
+     */
+    public TeamsAndGroups parse(BufferedSource source) throws IOException {
+        BufferedSource limited = Okio.buffer(new ByteLimitedSource(source, limits.maxResponseBytes()));
+        try (JsonParser parser = Json.factory().createParser(limited.inputStream())) {
+            return parse(parser);
+        }
+    }
+
+    TeamsAndGroups parse(JsonParser parser) throws IOException {
+        List<String> teams = List.of();
+        List<String> groups = List.of();
+
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "teams" -> teams = readStringList(parser, value, "teams");
+                case "groups" -> groups = readStringList(parser, value, "groups");
+                default -> parser.skipChildren();
+            }
+        }
+        expect(parser, parser.currentToken(), JsonToken.END_OBJECT);
+
+        return new TeamsAndGroups(teams, groups);
+    }
+
+    private List<String> readStringList(JsonParser parser, JsonToken token, String fieldName) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return List.of();
+        }
+
+        expect(parser, token, JsonToken.START_ARRAY);
+        List<String> values = new ArrayList<>();
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.VALUE_STRING) {
+                parser.skipChildren();
+                continue;
+            }
+            if (values.size() >= limits.maxElements()) {
+                throw new TeamApiResponseTooLargeException("Team API response has more than "
+                        + limits.maxElements() + " " + fieldName);
+            }
+            values.add(parser.getText());
+        }
+        return values;
+    }
+
+    /**
+     * Write teams and groups in the Team API response format. The limits are not applied, as the value is not
+     * read from an untrusted source. The sink is not closed.
+     */
+    public void write(TeamsAndGroups teamsAndGroups, BufferedSink sink) throws IOException {
+        try (JsonGenerator generator = Json.factory().createGenerator(sink.outputStream())) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            writeStringList(generator, "teams", teamsAndGroups.teams());
+            writeStringList(generator, "groups", teamsAndGroups.groups());
+            generator.writeEndObject();
+        }
+        sink.flush();
+    }
+
+    private static void writeStringList(JsonGenerator generator, String fieldName, List<String> values) throws IOException {
+        generator.writeArrayFieldStart(fieldName);
+        for (String value : values == null ? List.<String>of() : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but was " + actual);
+        }
+    }
+
+    private static class ByteLimitedSource extends ForwardingSource {
+        private final long maxBytes;
+        private long bytesRead;
+
+        ByteLimitedSource(Source delegate, long maxBytes) {
+            super(delegate);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, Math.min(byteCount, maxBytes - bytesRead + 1));
+            if (read > 0) {
+                bytesRead += read;
+                if (bytesRead > maxBytes) {
+                    throw new TeamApiResponseTooLargeException("Team API response exceeds " + maxBytes + " bytes");
+                }
+            }
+            return read;
+        }
+    }
+
+}
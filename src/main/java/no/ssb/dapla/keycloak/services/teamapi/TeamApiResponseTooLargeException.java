@@ -0,0 +1,11 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import no.ssb.dapla.keycloak.DaplaKeycloakException;
+
+public class TeamApiResponseTooLargeException extends DaplaKeycloakException {
+
+    public TeamApiResponseTooLargeException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,167 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for Team API lookups, shared by all service instances with the same {@link TeamApiConfig}.
+ */
+public class TeamApiStats {
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder negativeCacheHits = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder retriesDenied = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private final LongAdder refreshesAhead = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    void lookup() {
+        lookups.increment();
+    }
+
+    void cacheHit() {
+        cacheHits.increment();
+    }
+
+    void negativeCacheHit() {
+        negativeCacheHits.increment();
+    }
+
+    void request(boolean revalidation) {
+        requests.increment();
+        if (revalidation) {
+            revalidations.increment();
+        }
+    }
+
+    void retry() {
+        retries.increment();
+    }
+
+    void retryDenied() {
+        retriesDenied.increment();
+    }
+
+    void notModified(long savedBytes) {
+        notModified.increment();
+        bytesSaved.add(savedBytes);
+    }
+
+    void bytesReceived(long bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    void refreshAhead() {
+        refreshesAhead.increment();
+    }
+
+    void evictions(long count) {
+        evictions.add(count);
+    }
+
+    void expirations(long count) {
+        expirations.add(count);
+    }
+
+    /** Number of teams/groups lookups, whether served from cache or not */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /** Number of lookups served from a fresh cache entry without any network call */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /** Number of cache hits for users unknown by the Team API */
+    public long getNegativeCacheHits() {
+        return negativeCacheHits.sum();
+    }
+
+    /** Number of HTTP requests sent to the Team API */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /** Number of conditional (revalidation) requests sent to the Team API */
+    public long getRevalidations() {
+        return revalidations.sum();
+    }
+
+    /** Number of retried requests */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /** Number of retries that were not attempted because the retry budget was exhausted */
+    public long getRetriesDenied() {
+        return retriesDenied.sum();
+    }
+
+    /** Number of revalidations answered with 304 Not Modified */
+    public long getNotModified() {
+        return notModified.sum();
+    }
+
+    /** Number of response body bytes received from the Team API */
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /** Number of response body bytes that did not have to be transferred thanks to revalidation */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    /** Number of background refreshes of active users' entries ahead of expiry */
+    public long getRefreshesAhead() {
+        return refreshesAhead.sum();
+    }
+
+    /** Number of unexpired entries evicted to make room for new ones */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** Number of expired entries removed to make room for new ones */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /** Fraction of lookups served from cache (including negative cache hits) */
+    public double getHitRate() {
+        long lookupCount = getLookups();
+        return lookupCount == 0 ? 0 : (double) (getCacheHits() + getNegativeCacheHits()) / lookupCount;
+    }
+
+    /** Fraction of revalidations that were answered with 304 Not Modified */
+    public double getRevalidationHitRate() {
+        long revalidationCount = getRevalidations();
+        return revalidationCount == 0 ? 0 : (double) getNotModified() / revalidationCount;
+    }
+
+    @Override
+    public String toString() {
+        return "TeamApiStats{" +
+                "lookups=" + getLookups() +
+                ", cacheHits=" + getCacheHits() +
+                ", negativeCacheHits=" + getNegativeCacheHits() +
+                ", requests=" + getRequests() +
+                ", revalidations=" + getRevalidations() +
+                ", retries=" + getRetries() +
+                ", retriesDenied=" + getRetriesDenied() +
+                ", notModified=" + getNotModified() +
+                ", bytesReceived=" + getBytesReceived() +
+                ", bytesSaved=" + getBytesSaved() +
+                ", refreshesAhead=" + getRefreshesAhead() +
+                ", evictions=" + getEvictions() +
+                ", expirations=" + getExpirations() +
+                '}';
+    }
+}
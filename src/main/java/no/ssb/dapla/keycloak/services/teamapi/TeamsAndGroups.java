@@ -0,0 +1,9 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import java.util.List;
+
+/**
+ * A user's teams and access groups, as retrieved from the Dapla Team API.
+ */
+public record TeamsAndGroups(List<String> teams, List<String> groups) {
+}
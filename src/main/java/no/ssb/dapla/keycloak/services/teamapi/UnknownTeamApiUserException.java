@@ -0,0 +1,15 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import no.ssb.dapla.keycloak.DaplaKeycloakException;
+
+/**
+ * Thrown if the Team API does not know the user. The message leaves out the user's email, so that it does not end
+ * up in logs.
+ */
+public class UnknownTeamApiUserException extends DaplaKeycloakException {
+
+    public UnknownTeamApiUserException() {
+        super("User is not known by the Team API");
+    }
+
+}
@@ -0,0 +1,140 @@
+package no.ssb.dapla.keycloak.tracing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Per-phase timing of a single claim mapping (one setClaim execution).
+ *
+ * While bound to the current thread (from {@link #bind()} until {@link #stop()}), mappers and the services they
+ * call can time their phases with {@link #time(Phase, Supplier)} without passing the timer around. Time not
+ * attributed to any phase is reported as 'other'. It lives outside the mappers package so that services can time
+ * their phases without depending on the mappers.
+ */
+public class MappingTimer {
+
+    public enum Phase {
+        CONFIG("config"),
+        SERVICE("service"),
+        HTTP("http"),
+        JSON("json"),
+        MAP_CLAIM("mapClaim");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    private static final ThreadLocal<MappingTimer> CURRENT = new ThreadLocal<>();
+
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private long lapNanos;
+    private long timedInLapNanos;
+    private long endNanos;
+    private boolean stopped;
+
+    private MappingTimer(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        this.lapNanos = startNanos;
+    }
+
+    /**
+     * Start timing a mapping
+     */
+    public static MappingTimer start() {
+        return start(System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock source of the current time in nanos, such as {@link System#nanoTime()}
+     */
+    public static MappingTimer start(LongSupplier nanoClock) {
+        return new MappingTimer(nanoClock);
+    }
+
+    /**
+     * Bind the timer to the current thread, until {@link #stop()}
+     */
+    public void bind() {
+        CURRENT.set(this);
+    }
+
+    /**
+     * Time a phase of the mapping ongoing on the current thread, if any
+     */
+    public static <T> T time(Phase phase, Supplier<T> task) {
+        MappingTimer timer = CURRENT.get();
+        if (timer == null) {
+            return task.get();
+        }
+
+        long start = timer.nanoClock.getAsLong();
+        try {
+            return task.get();
+        }
+        finally {
+            long elapsed = timer.nanoClock.getAsLong() - start;
+            timer.phaseNanos[phase.ordinal()] += elapsed;
+            timer.timedInLapNanos += elapsed;
+        }
+    }
+
+    /**
+     * Attribute the time since the previous lap to a phase, except time already attributed by
+     * {@link #time(Phase, Supplier)}
+     */
+    public void lap(Phase phase) {
+        long now = nanoClock.getAsLong();
+        phaseNanos[phase.ordinal()] += now - lapNanos - timedInLapNanos;
+        lapNanos = now;
+        timedInLapNanos = 0;
+    }
+
+    /**
+     * Start a new lap, leaving the time since the previous lap unattributed
+     */
+    public void lap() {
+        lapNanos = nanoClock.getAsLong();
+        timedInLapNanos = 0;
+    }
+
+    /**
+     * Stop the timer and unbind it from the current thread
+     */
+    public void stop() {
+        endNanos = nanoClock.getAsLong();
+        stopped = true;
+        CURRENT.remove();
+    }
+
+    public long totalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalNanos());
+    }
+
+    public long phaseMillis(Phase phase) {
+        return TimeUnit.NANOSECONDS.toMillis(phaseNanos[phase.ordinal()]);
+    }
+
+    public long otherMillis() {
+        long attributed = 0;
+        for (long nanos : phaseNanos) {
+            attributed += nanos;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(0, totalNanos() - attributed));
+    }
+
+    private long totalNanos() {
+        return (stopped ? endNanos : nanoClock.getAsLong()) - startNanos;
+    }
+
+}
@@ -0,0 +1,53 @@
+package no.ssb.dapla.keycloak.tracing;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import no.ssb.dapla.keycloak.BuildInfo;
+
+/**
+ * Entry point for OpenTelemetry tracing.
+ *
+ * Tracing is optional. Spans are only recorded if an OpenTelemetry SDK is registered globally, such as by the
+ * OpenTelemetry Java agent. Otherwise, all tracing calls are no-ops. Sampling is decided by the registered SDK
+ * (configure a ratio based sampler to keep the overhead low in production), and span attributes are only computed
+ * for sampled spans.
+ */
+public class Tracing {
+
+    public static final String INSTRUMENTATION_NAME = "no.ssb.dapla.keycloak";
+
+    private static volatile OpenTelemetry openTelemetry;
+    private static volatile Tracer tracer;
+
+    private Tracing() {}
+
+    public static Tracer tracer() {
+        Tracer t = tracer;
+        if (t == null) {
+            t = openTelemetry().getTracer(INSTRUMENTATION_NAME, BuildInfo.INSTANCE.getVersion());
+            tracer = t;
+        }
+        return t;
+    }
+
+    public static TextMapPropagator propagator() {
+        return openTelemetry().getPropagators().getTextMapPropagator();
+    }
+
+    /**
+     * Use a specific OpenTelemetry instance instead of the global one, such as an in-memory SDK in tests.
+     * Use null to revert to the global instance.
+     */
+    public static void setOpenTelemetry(OpenTelemetry otel) {
+        openTelemetry = otel;
+        tracer = null;
+    }
+
+    private static OpenTelemetry openTelemetry() {
+        OpenTelemetry otel = openTelemetry;
+        return otel == null ? GlobalOpenTelemetry.get() : otel;
+    }
+
+}
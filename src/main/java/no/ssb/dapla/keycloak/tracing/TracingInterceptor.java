@@ -0,0 +1,69 @@
+package no.ssb.dapla.keycloak.tracing;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.context.propagation.TextMapSetter;
+import no.ssb.dapla.keycloak.utils.Urls;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+/**
+ * OkHttp interceptor that wraps every call in a client span, and propagates the trace context (W3C
+ * {@code traceparent}) to the called service.
+ *
+ * Asynchronous calls run on OkHttp's dispatcher threads, so the parent context is taken from the request's
+ * {@code Context} tag if it has one, and from the current thread otherwise. The recorded URL is redacted, see
+ * {@link Urls#redact}.
+ */
+public class TracingInterceptor implements Interceptor {
+
+    private static final TextMapSetter<Request.Builder> HEADER_SETTER = (builder, key, value) -> {
+        if (builder != null) {
+            builder.header(key, value);
+        }
+    };
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Context parent = request.tag(Context.class);
+        if (parent == null) {
+            parent = Context.current();
+        }
+        Span span = Tracing.tracer().spanBuilder("HTTP " + request.method())
+                .setParent(parent)
+                .setSpanKind(SpanKind.CLIENT)
+                .startSpan();
+        if (span.isRecording()) {
+            span.setAttribute("http.method", request.method());
+            span.setAttribute("http.url", Urls.redact(request.url()));
+            span.setAttribute("net.peer.name", request.url().host());
+        }
+
+        try (Scope ignored = parent.with(span).makeCurrent()) {
+            Request.Builder builder = request.newBuilder();
+            Tracing.propagator().inject(Context.current(), builder, HEADER_SETTER);
+            Response response = chain.proceed(builder.build());
+            span.setAttribute("http.status_code", response.code());
+            if (response.code() >= 400) {
+                span.setStatus(StatusCode.ERROR);
+            }
+            return response;
+        }
+        catch (IOException | RuntimeException e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR, e.getMessage());
+            throw e;
+        }
+        finally {
+            span.end();
+        }
+    }
+
+}
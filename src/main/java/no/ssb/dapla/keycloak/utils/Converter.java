@@ -1,13 +1,16 @@
 package no.ssb.dapla.keycloak.utils;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 public class Converter {
 
-    private static final ObjectMapper OBJECT_MAPER = new ObjectMapper();
-
     public static <T> T convert(Object fromValue, Class<T> toValueType) {
-        return OBJECT_MAPER.convertValue(fromValue, toValueType);
+        // Mapper config values are mostly read as strings, or are missing
+        if (fromValue == null) {
+            return null;
+        }
+        if (toValueType.isInstance(fromValue)) {
+            return toValueType.cast(fromValue);
+        }
+        return Json.objectMapper().convertValue(fromValue, toValueType);
     }
 
 }
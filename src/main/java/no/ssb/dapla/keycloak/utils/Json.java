@@ -1,42 +1,52 @@
 package no.ssb.dapla.keycloak.utils;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.squareup.moshi.JsonAdapter;
-import com.squareup.moshi.Moshi;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import java.io.IOException;
+import java.io.StringWriter;
 
+/**
+ * JSON mapping utilities, backed by a single shared Jackson configuration. Use {@link JsonCodec} for types that
+ * are read or written repeatedly, and {@link #factory()} for hand-written streaming parsers.
+ *
+ * The Jackson instances are created on first use (in a holder class), so that loading the provider and its
+ * mappers does not pay for initializing them.
+ */
 public class Json {
 
-    private static final Moshi MOSHI = new Moshi.Builder().build();
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static class ObjectMapperHolder {
+        static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        static final ObjectWriter WRITER = OBJECT_MAPPER.writer();
+        static final ObjectWriter PRETTY_WRITER = OBJECT_MAPPER.writerWithDefaultPrettyPrinter();
+    }
 
-    static {
-        OBJECT_MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        OBJECT_MAPPER.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    static ObjectMapper objectMapper() {
+        return ObjectMapperHolder.OBJECT_MAPPER;
     }
 
     /**
-     * Get Moshi adapter for class
+     * The shared, thread-safe factory for streaming parsers and generators
      */
-    public static <T> JsonAdapter<T> adapter(Class<T> type) {
-        return MOSHI.adapter(type);
+    public static JsonFactory factory() {
+        return ObjectMapperHolder.OBJECT_MAPPER.getFactory();
     }
 
     /**
      * Convert JSON to Object
      */
     public static <T> T toObject(Class<T> type, String json) {
-        try {
-            return OBJECT_MAPPER.readValue(json, type);
-        }
-        catch (IOException e) {
-            throw new JsonException("Error mapping JSON to " + type.getSimpleName() + " object", e);
-        }
+        return JsonCodec.of(type).read(json);
     }
 
     /**
@@ -45,12 +55,7 @@ public class Json {
      * Use with generics, like new TypeReference<HashMap<MyPair, String>>() {}
      */
     public static <T> T toObject(TypeReference<T> type, String json) {
-        try {
-            return OBJECT_MAPPER.readValue(json, type);
-        }
-        catch (IOException e) {
-            throw new JsonException("Error mapping JSON to " + type.getType() + " object", e);
-        }
+        return JsonCodec.of(type).read(json);
     }
 
     /**
@@ -58,7 +63,7 @@ public class Json {
      */
     public static String from(Object object) {
         try {
-            return OBJECT_MAPPER.writeValueAsString(object);
+            return ObjectMapperHolder.WRITER.writeValueAsString(object);
         } catch (JsonProcessingException e) {
             throw new JsonException("Error mapping " +  object.getClass().getSimpleName() + " object to JSON", e);
         }
@@ -69,17 +74,28 @@ public class Json {
      */
     public static String prettyFrom(Object object) {
         try {
-            return OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(object);
+            return ObjectMapperHolder.PRETTY_WRITER.writeValueAsString(object);
         } catch (JsonProcessingException e) {
             throw new JsonException("Error mapping " +  object.getClass().getSimpleName() + " object to JSON", e);
         }
     }
 
     /**
-     * Pretty print (indent) JSON string
+     * Pretty print (indent) JSON string. The tokens are copied straight from parser to generator, without
+     * building an object tree.
      */
     public static String prettyFrom(String string) {
-        return prettyFrom(toObject(Object.class, string));
+        StringWriter out = new StringWriter(string.length() * 2);
+        try (JsonParser parser = factory().createParser(string);
+             JsonGenerator generator = factory().createGenerator(out).setPrettyPrinter(new DefaultPrettyPrinter())) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentStructure(parser);
+            }
+        }
+        catch (IOException e) {
+            throw new JsonException("Error pretty printing JSON", e);
+        }
+        return out.toString();
     }
 
     public static class JsonException extends RuntimeException {
@@ -0,0 +1,102 @@
+package no.ssb.dapla.keycloak.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads and writes JSON for one type, using readers and writers that are built once and shared. Codecs are
+ * immutable and thread-safe, and are cached per type.
+ *
+ * All JSON in the provider goes through Jackson, which Keycloak already provides, so that the provider jar does
+ * not bundle a JSON library of its own. See {@link Json} for the shared configuration.
+ */
+public final class JsonCodec<T> {
+
+    private static final Map<Type, JsonCodec<?>> CODECS = new ConcurrentHashMap<>();
+
+    private final String typeName;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final ObjectWriter prettyWriter;
+    private final ObjectReader streamReader;
+    private final ObjectWriter streamWriter;
+
+    private JsonCodec(String typeName, ObjectReader reader, ObjectWriter writer) {
+        this.typeName = typeName;
+        this.reader = reader;
+        this.writer = writer;
+        this.prettyWriter = writer.withDefaultPrettyPrinter();
+        this.streamReader = reader.without(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        this.streamWriter = writer.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> JsonCodec<T> of(Class<T> type) {
+        return (JsonCodec<T>) CODECS.computeIfAbsent(type, key -> new JsonCodec<>(type.getSimpleName(),
+                Json.objectMapper().readerFor(type), Json.objectMapper().writerFor(type)));
+    }
+
+    /**
+     * Use with generics, like new TypeReference<HashMap<MyPair, String>>() {}
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> JsonCodec<T> of(TypeReference<T> type) {
+        return (JsonCodec<T>) CODECS.computeIfAbsent(type.getType(), key -> new JsonCodec<>(type.getType().getTypeName(),
+                Json.objectMapper().readerFor(type), Json.objectMapper().writerFor(type)));
+    }
+
+    public T read(String json) {
+        try {
+            return reader.readValue(json);
+        }
+        catch (IOException e) {
+            throw new Json.JsonException("Error mapping JSON to " + typeName + " object", e);
+        }
+    }
+
+    /**
+     * Read from a stream, such as an HTTP response body. The source is not closed.
+     */
+    public T read(BufferedSource source) throws IOException {
+        return streamReader.readValue(source.inputStream());
+    }
+
+    public String write(T value) {
+        try {
+            return writer.writeValueAsString(value);
+        }
+        catch (IOException e) {
+            throw new Json.JsonException("Error mapping " + typeName + " object to JSON", e);
+        }
+    }
+
+    /**
+     * Write pretty (indented) JSON
+     */
+    public String writePretty(T value) {
+        try {
+            return prettyWriter.writeValueAsString(value);
+        }
+        catch (IOException e) {
+            throw new Json.JsonException("Error mapping " + typeName + " object to JSON", e);
+        }
+    }
+
+    /**
+     * Write to a stream, such as an HTTP request body. The stream is not closed.
+     */
+    public void write(OutputStream out, T value) throws IOException {
+        streamWriter.writeValue(out, value);
+    }
+
+}
@@ -0,0 +1,24 @@
+package no.ssb.dapla.keycloak.utils;
+
+import okhttp3.HttpUrl;
+
+public class Urls {
+
+    static final String REDACTED = "REDACTED";
+
+    /**
+     * A URL that is safe to log or to record in a trace: credentials and fragment are removed, and query parameter
+     * values are replaced, as they may identify a user. Scheme, host, port and path are kept.
+     */
+    public static String redact(HttpUrl url) {
+        HttpUrl.Builder builder = url.newBuilder()
+                .username("")
+                .password("")
+                .fragment(null);
+        for (String name : url.queryParameterNames()) {
+            builder.setQueryParameter(name, REDACTED);
+        }
+        return builder.build().toString();
+    }
+
+}
@@ -22,7 +22,7 @@ class MockyDaplaTeamApiServiceIT {
     @Test
     public void testGetTeams() {
         List<String> expected = Arrays.asList("demo-enhjoern-x", "demo-enhjoern-y", "demo-enhjoern-z"); // Assuming these teams exist for the given API endpoint
-        List<String> actual = service.getTeams();
+        List<String> actual = service.getTeams("jane.doe@ssb.no");
 
         assertEquals(expected, actual);
     }
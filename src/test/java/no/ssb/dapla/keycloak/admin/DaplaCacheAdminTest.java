@@ -0,0 +1,133 @@
+package no.ssb.dapla.keycloak.admin;
+
+import mockwebserver3.Dispatcher;
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import mockwebserver3.RecordedRequest;
+import no.ssb.dapla.keycloak.mappers.teams.TeamsMapper;
+import no.ssb.dapla.keycloak.services.teamapi.MockyDaplaTeamApiService;
+import no.ssb.dapla.keycloak.services.teamapi.TeamApiCacheWarmer;
+import no.ssb.dapla.keycloak.services.teamapi.TeamApiCachePolicy;
+import no.ssb.dapla.keycloak.services.teamapi.TeamApiLimits;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.RealmModel;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DaplaCacheAdminTest {
+
+    private MockWebServer server;
+    private String teamApiUrl;
+    private RealmModel realm;
+    private DaplaCacheAdmin admin;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String user = request.getHeader(MockyDaplaTeamApiService.USER_HEADER);
+                if (user.startsWith("unknown")) {
+                    return new MockResponse().setResponseCode(404);
+                }
+                String team = user.startsWith("user1") ? "team-b" : "team-a";
+                return new MockResponse().setBody("{\"teams\": [\"" + team + "\"], \"groups\": []}");
+            }
+        });
+        server.start();
+        teamApiUrl = server.url("/").toString();
+
+        ProtocolMapperModel model = new ProtocolMapperModel();
+        model.setProtocolMapper(TeamsMapper.PROVIDER_ID);
+        model.setConfig(Map.of(
+                TeamsMapper.ConfigPropertyKey.API_IMPL, MockyDaplaTeamApiService.NAME,
+                TeamsMapper.ConfigPropertyKey.API_URL, teamApiUrl));
+        ClientModel client = Mockito.mock(ClientModel.class);
+        Mockito.when(client.getProtocolMappersStream()).thenAnswer(i -> Stream.of(model));
+        realm = Mockito.mock(RealmModel.class);
+        Mockito.when(realm.getId()).thenReturn(UUID.randomUUID().toString());
+        Mockito.when(realm.getClientsStream()).thenAnswer(i -> Stream.of(client));
+        Mockito.when(realm.getClientScopesStream()).thenAnswer(i -> Stream.empty());
+        admin = new DaplaCacheAdmin(realm);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void shouldOnlyReportCachesInUse() {
+        assertThat(admin.stats()).isEmpty();
+        assertThat(admin.warmUp(List.of("user0@ssb.no"), 1)).isEmpty();
+    }
+
+    @Test
+    void shouldWarmUpInTheBackground() throws InterruptedException {
+        new MockyDaplaTeamApiService(teamApiUrl, TeamApiLimits.DEFAULT, TeamApiCachePolicy.of(Duration.ofMinutes(5)));
+        assertThat(admin.warmUpStatus()).isNull();
+
+        DaplaCacheAdmin.WarmUpStatus status = admin.startWarmUp(List.of("user0@ssb.no", "user1@ssb.no"), 2);
+        // The realm belongs to the request's session, so the warm-up must not read it in the background
+        Mockito.clearInvocations(realm);
+        assertThat(status.users()).isEqualTo(2);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (status.state() == DaplaCacheAdmin.WarmUpState.RUNNING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            status = admin.warmUpStatus();
+        }
+
+        assertThat(status.state()).isEqualTo(DaplaCacheAdmin.WarmUpState.COMPLETED);
+        assertThat(status.results()).singleElement().satisfies(r -> assertThat(r.result().warmed()).isEqualTo(2));
+        Mockito.verify(realm, Mockito.never()).getClientsStream();
+        Mockito.verify(realm, Mockito.never()).getClientScopesStream();
+        assertThatThrownBy(() -> admin.startWarmUp(Collections.nCopies(DaplaCacheAdmin.MAX_WARM_UP_USERS + 1, "user0@ssb.no"), 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldWarmUpReportAndFlush() {
+        new MockyDaplaTeamApiService(teamApiUrl, TeamApiLimits.DEFAULT, TeamApiCachePolicy.of(Duration.ofMinutes(5)));
+        List<String> users = IntStream.range(0, 20).mapToObj(i -> "user" + i + "@ssb.no").toList();
+
+        List<DaplaCacheAdmin.WarmUpResult> results = admin.warmUp(
+                Stream.concat(users.stream(), Stream.of("unknown@ssb.no")).toList(), 4);
+        assertThat(results).singleElement().satisfies(r -> assertThat(r.teamApiUrl()).isEqualTo(teamApiUrl));
+        TeamApiCacheWarmer.WarmUpResult result = results.get(0).result();
+        assertThat(result.warmed()).isEqualTo(20);
+        assertThat(result.unknown()).isEqualTo(1);
+        assertThat(result.failed()).isZero();
+        assertThat(server.getRequestCount()).isEqualTo(21);
+
+        assertThat(admin.stats()).singleElement().satisfies(stats -> {
+            assertThat(stats.teamApiUrl()).isEqualTo(teamApiUrl);
+            assertThat(stats.size()).isEqualTo(21);
+            assertThat(stats.estimatedBytes()).isPositive();
+            assertThat(stats.snapshotAgeSeconds()).isNotNull();
+        });
+
+        // user1 and user10-19 are members of team-b
+        assertThat(admin.flushTeam("team-b").flushed()).isEqualTo(11);
+        assertThat(admin.flushUser("user0@ssb.no").flushed()).isEqualTo(1);
+        assertThat(admin.flushUser("user0@ssb.no").flushed()).isZero();
+        assertThat(admin.flushAll().flushed()).isEqualTo(9);
+        assertThat(admin.stats()).singleElement().satisfies(stats -> assertThat(stats.size()).isZero());
+    }
+
+}
@@ -0,0 +1,93 @@
+package no.ssb.dapla.keycloak.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import no.ssb.dapla.keycloak.mappers.TokenMapperFixture;
+import no.ssb.dapla.keycloak.mappers.teams.TeamsMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.models.ProtocolMapperModel;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JfrEventsTest {
+
+    private static final String TEAMS_JSON = """
+            {"teams": ["team-a"], "groups": []}""";
+
+    @TempDir
+    Path tempDir;
+
+    private MockWebServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void shouldRecordSlowMappingsAndTeamApiLookups() throws IOException {
+        // Slow enough to exceed the default thresholds
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON).setHeadersDelay(50, TimeUnit.MILLISECONDS));
+        TeamsMapper mapper = new TeamsMapper();
+        ProtocolMapperModel model = model();
+
+        Path dump = tempDir.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(MapClaimEvent.NAME);
+            recording.enable(TeamApiLookupEvent.NAME);
+            recording.start();
+
+            TokenMapperFixture.transformAccessToken(mapper, model);
+            // Served from cache, which is below the thresholds
+            TokenMapperFixture.transformAccessToken(mapper, model);
+
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        List<RecordedEvent> lookups = events.stream().filter(e -> e.getEventType().getName().equals(TeamApiLookupEvent.NAME)).toList();
+        List<RecordedEvent> mappings = events.stream().filter(e -> e.getEventType().getName().equals(MapClaimEvent.NAME)).toList();
+
+        assertThat(lookups).singleElement().satisfies(event -> {
+            assertThat(event.getString("apiUrl")).isEqualTo(server.url("/").toString());
+            assertThat(event.getThread("callerThread").getJavaThreadId()).isEqualTo(Thread.currentThread().getId());
+            assertThat(event.getString("cacheResult")).isEqualTo("miss");
+            assertThat(event.getInt("statusCode")).isEqualTo(200);
+            assertThat(event.getLong("bytes")).isEqualTo(TEAMS_JSON.length());
+            assertThat(event.getInt("attempts")).isEqualTo(1);
+            assertThat(event.getDuration().toMillis()).isGreaterThanOrEqualTo(50);
+        });
+        assertThat(mappings).first().satisfies(event -> {
+            assertThat(event.getString("mapperId")).isEqualTo(TeamsMapper.PROVIDER_ID);
+            assertThat(event.getString("claimName")).isEqualTo(TokenMapperFixture.CLAIM_NAME);
+            assertThat(event.getString("tokenType")).isEqualTo("AccessToken");
+            assertThat(event.getString("outcome")).isEqualTo("mapped");
+        });
+    }
+
+    private ProtocolMapperModel model() {
+        return TokenMapperFixture.teamApiModel(server.url("/").toString(), Map.of(
+                TeamsMapper.ConfigPropertyKey.REFRESH_AHEAD_FRACTION, "0"
+        ));
+    }
+
+}
@@ -0,0 +1,41 @@
+package no.ssb.dapla.keycloak.loadtest;
+
+/**
+ * Describes how the Team API stand-in misbehaves.
+ *
+ * @param medianLatencyMillis median response latency. Latencies are log-normally distributed around it.
+ * @param latencySigma spread of the log-normal latency distribution (0 gives a fixed latency)
+ * @param errorRate fraction of requests answered with HTTP 500
+ * @param resetRate fraction of requests where the connection is dropped without a response
+ * @param timeoutRate fraction of requests that are never answered, forcing a client side timeout
+ * @param oversizedRate fraction of requests answered with a body larger than the client accepts
+ */
+public record FaultProfile(String name,
+                           long medianLatencyMillis,
+                           double latencySigma,
+                           double errorRate,
+                           double resetRate,
+                           double timeoutRate,
+                           double oversizedRate) {
+
+    public static FaultProfile healthy() {
+        return new FaultProfile("healthy", 5, 0.3, 0, 0, 0, 0);
+    }
+
+    public static FaultProfile slow() {
+        return new FaultProfile("slow", 200, 0.8, 0, 0, 0, 0);
+    }
+
+    public static FaultProfile flaky() {
+        return new FaultProfile("flaky", 10, 0.5, 0.05, 0.05, 0, 0);
+    }
+
+    public static FaultProfile timeouts() {
+        return new FaultProfile("timeouts", 10, 0.5, 0, 0, 0.01, 0);
+    }
+
+    public static FaultProfile oversized() {
+        return new FaultProfile("oversized", 10, 0.5, 0, 0, 0, 0.05);
+    }
+
+}
@@ -0,0 +1,58 @@
+package no.ssb.dapla.keycloak.loadtest;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Throughput and latency percentiles of a load test run
+ */
+public class LoadTestResult {
+
+    private final String name;
+    private final long[] sortedLatencyNanos;
+    private final long errors;
+    private final Duration elapsed;
+
+    public LoadTestResult(String name, long[] latencyNanos, long errors, Duration elapsed) {
+        this.name = name;
+        this.sortedLatencyNanos = latencyNanos.clone();
+        Arrays.sort(this.sortedLatencyNanos);
+        this.errors = errors;
+        this.elapsed = elapsed;
+    }
+
+    public long count() {
+        return sortedLatencyNanos.length;
+    }
+
+    public long errors() {
+        return errors;
+    }
+
+    public double throughputPerSecond() {
+        return count() / (elapsed.toNanos() / 1e9);
+    }
+
+    /**
+     * @param percentile such as 0.99 for p99
+     */
+    public Duration latency(double percentile) {
+        if (sortedLatencyNanos.length == 0) {
+            return Duration.ZERO;
+        }
+        int index = (int) Math.ceil(percentile * sortedLatencyNanos.length) - 1;
+        return Duration.ofNanos(sortedLatencyNanos[Math.max(0, Math.min(index, sortedLatencyNanos.length - 1))]);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-10s requests=%d errors=%d throughput=%.1f/s p50=%.1fms p99=%.1fms p999=%.1fms max=%.1fms",
+                name, count(), errors, throughputPerSecond(),
+                millis(latency(0.5)), millis(latency(0.99)), millis(latency(0.999)), millis(latency(1.0)));
+    }
+
+    private static double millis(Duration d) {
+        return d.toNanos() / 1e6;
+    }
+
+}
@@ -0,0 +1,115 @@
+package no.ssb.dapla.keycloak.loadtest;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures provider discovery, admin console listing and first-token latency, each in a fresh JVM, and reports the
+ * median of a number of runs. The medians are written to target/startup-benchmark.properties. Pass a file from an
+ * earlier run as baseline to compare against it, failing if a phase got slower than the allowed regression.
+ *
+ * Run with: make startup-benchmark [STARTUP_BASELINE=path/to/startup-benchmark.properties]
+ */
+@Tag("loadtest")
+class StartupBenchmark {
+
+    private static final int RUNS = Integer.getInteger("startup.runs", 7);
+    private static final String BASELINE = System.getProperty("startup.baseline", "");
+    private static final double MAX_REGRESSION = Double.parseDouble(System.getProperty("startup.max-regression", "0.25"));
+    private static final List<String> PHASES = List.of("discovery", "admin-console", "first-token", "second-token");
+
+    @Test
+    void measureStartup() throws Exception {
+        Map<String, long[]> samples = new LinkedHashMap<>();
+        for (String phase : PHASES) {
+            samples.put(phase, new long[RUNS]);
+        }
+        for (int run = 0; run < RUNS; run++) {
+            Map<String, Long> result = probe();
+            assertThat(result.get("mappers")).isPositive();
+            for (String phase : PHASES) {
+                samples.get(phase)[run] = result.get(phase);
+            }
+        }
+
+        Properties medians = new Properties();
+        samples.forEach((phase, nanos) -> medians.setProperty(phase, String.valueOf(median(nanos))));
+        try (Writer writer = Files.newBufferedWriter(Path.of("target", "startup-benchmark.properties"))) {
+            medians.store(writer, "Median startup phase nanos of " + RUNS + " runs");
+        }
+
+        Properties baseline = baseline();
+        List<String> regressions = new ArrayList<>();
+        for (String phase : PHASES) {
+            long median = Long.parseLong(medians.getProperty(phase));
+            String baselineValue = baseline.getProperty(phase);
+            if (baselineValue == null) {
+                System.out.printf("%-14s median=%.1fms%n", phase, median / 1e6);
+                continue;
+            }
+            long baselineMedian = Long.parseLong(baselineValue);
+            double change = (double) (median - baselineMedian) / baselineMedian;
+            System.out.printf("%-14s median=%.1fms baseline=%.1fms change=%+.0f%%%n",
+                    phase, median / 1e6, baselineMedian / 1e6, change * 100);
+            if (change > MAX_REGRESSION) {
+                regressions.add(phase);
+            }
+        }
+        assertThat(regressions).as("phases slower than baseline by more than %.0f%%", MAX_REGRESSION * 100).isEmpty();
+    }
+
+    private static Map<String, Long> probe() throws IOException, InterruptedException {
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        Process process = new ProcessBuilder(java.toString(), "-cp", System.getProperty("java.class.path"),
+                StartupProbe.class.getName())
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+
+        Map<String, Long> result = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] keyValue = line.split("=", 2);
+                if (keyValue.length == 2 && keyValue[1].matches("\\d+")) {
+                    result.put(keyValue[0], Long.parseLong(keyValue[1]));
+                }
+            }
+        }
+        assertThat(process.waitFor()).as("startup probe exit code").isZero();
+        return result;
+    }
+
+    private static Properties baseline() throws IOException {
+        Properties baseline = new Properties();
+        if (!BASELINE.isBlank()) {
+            try (Reader reader = Files.newBufferedReader(Path.of(BASELINE))) {
+                baseline.load(reader);
+            }
+        }
+        return baseline;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+}
@@ -0,0 +1,87 @@
+package no.ssb.dapla.keycloak.loadtest;
+
+import no.ssb.dapla.keycloak.mappers.ConfigPropertyKey;
+import no.ssb.dapla.keycloak.mappers.shortname.ShortUsernameMapper;
+import no.ssb.dapla.keycloak.mappers.teams.TeamsMapper;
+import no.ssb.dapla.keycloak.services.teamapi.DummyDaplaTeamApiService;
+import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.protocol.ProtocolMapper;
+import org.keycloak.protocol.oidc.mappers.OIDCAttributeMapperHelper;
+import org.keycloak.representations.AccessToken;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Measures the startup phases of the provider in a fresh JVM, the way Keycloak exercises them: provider discovery,
+ * the admin console listing the mappers, and the first and second token mapping. Prints one {@code phase=nanos}
+ * line per phase.
+ *
+ * Run by {@link StartupBenchmark}. Deliberately avoids Mockito, as initializing it would dwarf what is measured.
+ */
+public class StartupProbe {
+
+    public static void main(String[] args) {
+        long start = System.nanoTime();
+        List<ProtocolMapper> mappers = ServiceLoader.load(ProtocolMapper.class).stream()
+                .filter(provider -> provider.type().getName().startsWith("no.ssb.dapla."))
+                .map(ServiceLoader.Provider::get)
+                .toList();
+        long discovered = System.nanoTime();
+
+        for (ProtocolMapper mapper : mappers) {
+            mapper.getDisplayType();
+            mapper.getConfigProperties();
+            mapper.getHelpText();
+        }
+        long listed = System.nanoTime();
+
+        mapToken();
+        long firstToken = System.nanoTime();
+
+        mapToken();
+        long secondToken = System.nanoTime();
+
+        System.out.println("mappers=" + mappers.size());
+        System.out.println("discovery=" + (discovered - start));
+        System.out.println("admin-console=" + (listed - discovered));
+        System.out.println("first-token=" + (firstToken - listed));
+        System.out.println("second-token=" + (secondToken - firstToken));
+    }
+
+    private static void mapToken() {
+        UserSessionModel userSession = userSession("jane.doe@ssb.no");
+        new TeamsMapper().transformAccessToken(new AccessToken(), model(Map.of(
+                TeamsMapper.ConfigPropertyKey.API_IMPL, DummyDaplaTeamApiService.NAME
+        )), null, userSession, null);
+        new ShortUsernameMapper().transformAccessToken(new AccessToken(), model(Map.of(
+                ShortUsernameMapper.ConfigPropertyKey.DOMAINS_NOT_USED_AS_PREFIX, "ssb.no"
+        )), null, userSession, null);
+    }
+
+    private static ProtocolMapperModel model(Map<String, String> mapperConfig) {
+        Map<String, String> config = new HashMap<>(mapperConfig);
+        config.put(OIDCAttributeMapperHelper.TOKEN_CLAIM_NAME, "claim");
+        config.put(OIDCAttributeMapperHelper.INCLUDE_IN_ACCESS_TOKEN, "true");
+        config.put(ConfigPropertyKey.VERBOSE_LOGGING, "false");
+        ProtocolMapperModel model = new ProtocolMapperModel();
+        model.setConfig(config);
+        return model;
+    }
+
+    private static UserSessionModel userSession(String email) {
+        UserModel user = proxy(UserModel.class, Map.of("getEmail", email, "getId", "1"));
+        return proxy(UserSessionModel.class, Map.of("getUser", user));
+    }
+
+    private static <T> T proxy(Class<T> type, Map<String, Object> returnValues) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> returnValues.get(method.getName())));
+    }
+
+}
@@ -0,0 +1,76 @@
+package no.ssb.dapla.keycloak.loadtest;
+
+import mockwebserver3.Dispatcher;
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import mockwebserver3.RecordedRequest;
+import mockwebserver3.SocketPolicy;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local, offline stand-in for the Dapla Team API that injects faults according to a {@link FaultProfile}.
+ */
+public class TeamApiStandIn implements AutoCloseable {
+
+    private static final String TEAMS_JSON = """
+            {"teams": ["demo-enhjoern-a", "demo-enhjoern-b", "play-foeniks-a"], "groups": ["demo-enhjoern-a-developers"]}""";
+
+    private final MockWebServer server = new MockWebServer();
+    private final String oversizedJson;
+
+    public TeamApiStandIn(FaultProfile profile, int oversizedBytes) throws IOException {
+        this.oversizedJson = "{\"teams\": [\"" + "x".repeat(oversizedBytes) + "\"]}";
+        server.setDispatcher(new FaultInjectingDispatcher(profile));
+        server.start();
+    }
+
+    public String url() {
+        return server.url("/").toString();
+    }
+
+    public int requestCount() {
+        return server.getRequestCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    private class FaultInjectingDispatcher extends Dispatcher {
+        private final FaultProfile profile;
+
+        FaultInjectingDispatcher(FaultProfile profile) {
+            this.profile = profile;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long latencyMillis = Math.round(profile.medianLatencyMillis() * Math.exp(profile.latencySigma() * random.nextGaussian()));
+
+            double dice = random.nextDouble();
+            MockResponse response;
+            if ((dice -= profile.timeoutRate()) < 0) {
+                return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+            }
+            else if ((dice -= profile.resetRate()) < 0) {
+                response = new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+            }
+            else if ((dice -= profile.errorRate()) < 0) {
+                response = new MockResponse().setResponseCode(500);
+            }
+            else if ((dice -= profile.oversizedRate()) < 0) {
+                response = new MockResponse().setBody(oversizedJson);
+            }
+            else {
+                response = new MockResponse().setBody(TEAMS_JSON);
+            }
+            return response.setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+}
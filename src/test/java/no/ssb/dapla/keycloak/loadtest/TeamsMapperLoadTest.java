@@ -0,0 +1,136 @@
+package no.ssb.dapla.keycloak.loadtest;
+
+import no.ssb.dapla.keycloak.mappers.ConfigPropertyKey;
+import no.ssb.dapla.keycloak.mappers.teams.TeamsMapper;
+import no.ssb.dapla.keycloak.services.teamapi.MockyDaplaTeamApiService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.keycloak.models.ClientSessionContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.protocol.oidc.mappers.OIDCAttributeMapperHelper;
+import org.keycloak.representations.IDToken;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives TeamsMapper token mapping from many concurrent threads against a local Team API stand-in that injects
+ * latency, errors, dropped connections, timeouts and oversized responses.
+ *
+ * Run with: make loadtest
+ */
+@Tag("loadtest")
+class TeamsMapperLoadTest {
+
+    private static final int THREADS = Integer.getInteger("loadtest.threads", 16);
+    private static final int REQUESTS = Integer.getInteger("loadtest.requests", 2000);
+    private static final int USERS = Integer.getInteger("loadtest.users", 500);
+    private static final String CACHE_TTL_SECONDS = System.getProperty("loadtest.cache-ttl-seconds", "0");
+    private static final int OVERSIZED_BYTES = 2 * 1024 * 1024;
+
+    static Stream<FaultProfile> faultProfiles() {
+        return Stream.of(
+                FaultProfile.healthy(),
+                FaultProfile.slow(),
+                FaultProfile.flaky(),
+                FaultProfile.timeouts(),
+                FaultProfile.oversized()
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("faultProfiles")
+    void mapTeamsUnderLoad(FaultProfile profile) throws Exception {
+        try (TeamApiStandIn teamApi = new TeamApiStandIn(profile, OVERSIZED_BYTES)) {
+            LoadTestResult result = run(profile.name(), teamApi.url());
+            System.out.println(result);
+
+            assertThat(result.count()).isEqualTo(REQUESTS);
+            assertThat(teamApi.requestCount()).isPositive();
+        }
+    }
+
+    private LoadTestResult run(String name, String teamApiUrl) throws Exception {
+        TeamsMapper mapper = new TeamsMapper();
+        ProtocolMapperModel model = new ProtocolMapperModel();
+        model.setConfig(Map.of(
+                OIDCAttributeMapperHelper.TOKEN_CLAIM_NAME, "teams",
+                OIDCAttributeMapperHelper.JSON_TYPE, "JSON",
+                OIDCAttributeMapperHelper.INCLUDE_IN_ID_TOKEN, "true",
+                ConfigPropertyKey.VERBOSE_LOGGING, "false",
+                TeamsMapper.ConfigPropertyKey.API_IMPL, MockyDaplaTeamApiService.NAME,
+                TeamsMapper.ConfigPropertyKey.API_URL, teamApiUrl,
+                TeamsMapper.ConfigPropertyKey.CACHE_TTL_SECONDS, CACHE_TTL_SECONDS
+        ));
+
+        List<UserSessionModel> userSessions = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            userSessions.add(userSession("user" + i + "@ssb.no"));
+        }
+        KeycloakSession keycloakSession = Mockito.mock(KeycloakSession.class);
+        ClientSessionContext clientSessionCtx = Mockito.mock(ClientSessionContext.class);
+
+        long[] latencies = new long[REQUESTS];
+        AtomicInteger next = new AtomicInteger();
+        LongAdder errors = new LongAdder();
+
+        Callable<Void> worker = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < REQUESTS) {
+                UserSessionModel userSession = userSessions.get(i % USERS);
+                long start = System.nanoTime();
+                try {
+                    mapper.transformIDToken(new IDToken(), model, keycloakSession, userSession, clientSessionCtx);
+                }
+                catch (RuntimeException e) {
+                    errors.increment();
+                }
+                latencies[i] = System.nanoTime() - start;
+            }
+            return null;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(worker));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        return new LoadTestResult(name, latencies, errors.sum(), elapsed);
+    }
+
+    private static UserSessionModel userSession(String email) {
+        UserModel user = Mockito.mock(UserModel.class);
+        Mockito.when(user.getEmail()).thenReturn(email);
+        UserSessionModel userSession = Mockito.mock(UserSessionModel.class);
+        Mockito.when(userSession.getUser()).thenReturn(user);
+        return userSession;
+    }
+
+}
@@ -0,0 +1,95 @@
+package no.ssb.dapla.keycloak.mappers;
+
+import no.ssb.dapla.keycloak.services.teamapi.TeamsAndGroups;
+import no.ssb.dapla.keycloak.services.teamapi.UnknownTeamApiUserException;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionModel;
+import org.mockito.Mockito;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DaplaUserContextTest {
+
+    @Test
+    void shouldShareContextWithinSessionPerUser() {
+        KeycloakSession session = keycloakSession();
+        UserSessionModel jane = userSession("1", "jane.doe@ssb.no");
+        UserSessionModel john = userSession("2", "john.doe@ssb.no");
+
+        DaplaUserContext context = DaplaUserContext.of(session, jane);
+        assertThat(DaplaUserContext.of(session, jane)).isSameAs(context);
+        assertThat(DaplaUserContext.of(session, john)).isNotSameAs(context);
+        assertThat(DaplaUserContext.of(keycloakSession(), jane)).isNotSameAs(context);
+        assertThat(DaplaUserContext.of(null, jane)).isNotSameAs(context);
+    }
+
+    @Test
+    void shouldTrimEmail() {
+        DaplaUserContext context = DaplaUserContext.of(keycloakSession(), userSession("1", " jane.doe@ssb.no "));
+        assertThat(context.email()).contains("jane.doe@ssb.no");
+
+        assertThat(DaplaUserContext.of(keycloakSession(), userSession("2", " ")).email()).isEmpty();
+        assertThat(DaplaUserContext.of(keycloakSession(), userSession("3", null)).email()).isEmpty();
+    }
+
+    @Test
+    void shouldLoadValuesOnce() {
+        DaplaUserContext context = DaplaUserContext.of(keycloakSession(), userSession("1", "jane.doe@ssb.no"));
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(context.get("key", loads::incrementAndGet)).isEqualTo(1);
+        assertThat(context.get("key", loads::incrementAndGet)).isEqualTo(1);
+        assertThat(context.get("other", loads::incrementAndGet)).isEqualTo(2);
+    }
+
+    @Test
+    void shouldRememberFailedLookups() {
+        DaplaUserContext context = DaplaUserContext.of(keycloakSession(), userSession("1", "jane.doe@ssb.no"));
+        AtomicInteger lookups = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> context.teams("source", () -> {
+                lookups.incrementAndGet();
+                throw new UnknownTeamApiUserException();
+            })).isInstanceOf(UnknownTeamApiUserException.class);
+        }
+        assertThat(lookups).hasValue(1);
+    }
+
+    @Test
+    void shouldReuseTeamsAndGroupsForTeams() {
+        DaplaUserContext context = DaplaUserContext.of(keycloakSession(), userSession("1", "jane.doe@ssb.no"));
+        context.teamsAndGroups("source", () -> new TeamsAndGroups(List.of("team-a"), List.of("team-a-developers")));
+
+        assertThat(context.teams("source", () -> List.of("not-used"))).containsExactly("team-a");
+        assertThat(context.teams("other-source", () -> List.of("team-b"))).containsExactly("team-b");
+    }
+
+    private static KeycloakSession keycloakSession() {
+        Map<String, Object> attributes = new HashMap<>();
+        KeycloakSession session = Mockito.mock(KeycloakSession.class);
+        Mockito.when(session.getAttribute(Mockito.anyString(), Mockito.any()))
+                .thenAnswer(i -> attributes.get(i.<String>getArgument(0)));
+        Mockito.doAnswer(i -> attributes.put(i.getArgument(0), i.getArgument(1)))
+                .when(session).setAttribute(Mockito.anyString(), Mockito.any());
+        return session;
+    }
+
+    private static UserSessionModel userSession(String id, String email) {
+        UserModel user = Mockito.mock(UserModel.class);
+        Mockito.when(user.getId()).thenReturn(id);
+        Mockito.when(user.getEmail()).thenReturn(email);
+        UserSessionModel userSession = Mockito.mock(UserSessionModel.class);
+        Mockito.when(userSession.getUser()).thenReturn(user);
+        return userSession;
+    }
+
+}
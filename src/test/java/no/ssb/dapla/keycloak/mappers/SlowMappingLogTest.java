@@ -0,0 +1,110 @@
+package no.ssb.dapla.keycloak.mappers;
+
+import no.ssb.dapla.keycloak.services.teamapi.BlockingDaplaTeamApiService;
+import no.ssb.dapla.keycloak.tracing.MappingTimer;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlowMappingLogTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final SlowMappingLog slowMappingLog = new SlowMappingLog("oidc-dapla-test-mapper", Logger.getLogger(SlowMappingLogTest.class));
+
+    @Test
+    void shouldTimePhases() {
+        MappingTimer timer = MappingTimer.start(clock::get);
+        timer.bind();
+        MappingTimer.time(MappingTimer.Phase.HTTP, () -> advance(30));
+        advance(20);
+        timer.lap(MappingTimer.Phase.MAP_CLAIM);
+        advance(5);
+        timer.stop();
+
+        assertThat(timer.phaseMillis(MappingTimer.Phase.HTTP)).isEqualTo(30);
+        // Time already attributed to HTTP is not counted twice
+        assertThat(timer.phaseMillis(MappingTimer.Phase.MAP_CLAIM)).isEqualTo(20);
+        assertThat(timer.phaseMillis(MappingTimer.Phase.CONFIG)).isZero();
+        assertThat(timer.otherMillis()).isEqualTo(5);
+        assertThat(timer.totalMillis()).isEqualTo(55);
+
+        // The timer is no longer bound to the thread
+        assertThat(MappingTimer.time(MappingTimer.Phase.JSON, () -> advance(5))).isEqualTo(5);
+        assertThat(timer.phaseMillis(MappingTimer.Phase.JSON)).isZero();
+        assertThat(timer.totalMillis()).isEqualTo(55);
+    }
+
+    @Test
+    void shouldOnlyTimePhasesWhileBound() {
+        MappingTimer timer = MappingTimer.start(clock::get);
+        MappingTimer.time(MappingTimer.Phase.HTTP, () -> advance(30));
+        timer.stop();
+
+        assertThat(timer.phaseMillis(MappingTimer.Phase.HTTP)).isZero();
+        assertThat(timer.otherMillis()).isEqualTo(30);
+    }
+
+    @Test
+    void shouldOnlyTimeTeamApiLookupsThatAreWaitedFor() {
+        MappingTimer timer = MappingTimer.start(clock::get);
+        timer.bind();
+        try {
+            BlockingDaplaTeamApiService.await(CompletableFuture.completedFuture(advance(10)));
+
+            CompletableFuture<Integer> pending = new CompletableFuture<>();
+            Thread caller = Thread.currentThread();
+            new Thread(() -> {
+                // Complete the lookup once the caller is waiting for it
+                while (caller.getState() != Thread.State.WAITING) {
+                    Thread.onSpinWait();
+                }
+                pending.complete(advance(40));
+            }).start();
+            BlockingDaplaTeamApiService.await(pending);
+        }
+        finally {
+            timer.stop();
+        }
+
+        assertThat(timer.phaseMillis(MappingTimer.Phase.HTTP)).isEqualTo(40);
+    }
+
+    @Test
+    void shouldOnlyLogMappingsSlowerThanThreshold() {
+        MappingTimer fast = MappingTimer.start(clock::get);
+        fast.stop();
+        assertThat(slowMappingLog.log("mapper-1", "claim", "mapped", fast, 50, 10)).isFalse();
+
+        MappingTimer slow = slowTimer();
+        assertThat(slowMappingLog.log("mapper-1", "claim", "mapped", slow, 50, 10)).isTrue();
+        assertThat(slowMappingLog.log("mapper-1", "claim", "mapped", slow, 0, 10)).isFalse();
+    }
+
+    @Test
+    void shouldRateLimitPerMapper() {
+        MappingTimer slow = slowTimer();
+        assertThat(slowMappingLog.log("mapper-1", "claim", "mapped", slow, 50, 2)).isTrue();
+        assertThat(slowMappingLog.log("mapper-1", "claim", "mapped", slow, 50, 2)).isTrue();
+        assertThat(slowMappingLog.log("mapper-1", "claim", "mapped", slow, 50, 2)).isFalse();
+        assertThat(slowMappingLog.log("mapper-2", "claim", "mapped", slow, 50, 2)).isTrue();
+    }
+
+    private MappingTimer slowTimer() {
+        MappingTimer timer = MappingTimer.start(clock::get);
+        timer.bind();
+        MappingTimer.time(MappingTimer.Phase.HTTP, () -> advance(60));
+        timer.stop();
+        return timer;
+    }
+
+    private int advance(int millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        return millis;
+    }
+
+}
@@ -0,0 +1,80 @@
+package no.ssb.dapla.keycloak.mappers;
+
+import no.ssb.dapla.keycloak.mappers.teams.TeamsMapper;
+import no.ssb.dapla.keycloak.services.teamapi.MockyDaplaTeamApiService;
+import org.keycloak.models.ClientSessionContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.protocol.oidc.mappers.OIDCAttributeMapperHelper;
+import org.keycloak.representations.AccessToken;
+import org.mockito.Mockito;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shared setup for tests that run a token mapper: mapper configs, a user session for {@link #USER_EMAIL}, and
+ * mapping an access token the way Keycloak does.
+ */
+public final class TokenMapperFixture {
+
+    public static final String USER_EMAIL = "jane.doe@ssb.no";
+    public static final String CLAIM_NAME = "dapla.teams";
+
+    private TokenMapperFixture() {}
+
+    /**
+     * Config of a mapper that writes {@link #CLAIM_NAME} to the access token
+     *
+     * @param mapperConfig mapper specific config, which may also override the defaults
+     */
+    public static ProtocolMapperModel accessTokenModel(Map<String, String> mapperConfig) {
+        Map<String, String> config = new HashMap<>();
+        config.put(ConfigPropertyKey.VERBOSE_LOGGING, Boolean.FALSE.toString());
+        config.put(OIDCAttributeMapperHelper.TOKEN_CLAIM_NAME, CLAIM_NAME);
+        config.put(OIDCAttributeMapperHelper.INCLUDE_IN_ACCESS_TOKEN, Boolean.TRUE.toString());
+        config.putAll(mapperConfig);
+        ProtocolMapperModel model = new ProtocolMapperModel();
+        model.setConfig(config);
+        return model;
+    }
+
+    /**
+     * Config of a {@link TeamsMapper} that writes {@link #CLAIM_NAME} to the access token, with teams from the Team
+     * API at the given url
+     */
+    public static ProtocolMapperModel teamApiModel(String teamApiUrl, Map<String, String> mapperConfig) {
+        Map<String, String> config = new HashMap<>();
+        config.put(TeamsMapper.ConfigPropertyKey.API_IMPL, MockyDaplaTeamApiService.NAME);
+        config.put(TeamsMapper.ConfigPropertyKey.API_URL, teamApiUrl);
+        config.putAll(mapperConfig);
+        return accessTokenModel(config);
+    }
+
+    /**
+     * A user session of a user with the given email
+     */
+    public static UserSessionModel userSession(String email) {
+        UserSessionModel userSession = Mockito.mock(UserSessionModel.class);
+        UserModel user = Mockito.mock(UserModel.class);
+        Mockito.when(user.getEmail()).thenReturn(email);
+        Mockito.when(userSession.getUser()).thenReturn(user);
+        return userSession;
+    }
+
+    /**
+     * Map an access token for {@link #USER_EMAIL}
+     */
+    public static AccessToken transformAccessToken(AbstractTokenMapper mapper, ProtocolMapperModel model) {
+        return transformAccessToken(mapper, model, userSession(USER_EMAIL));
+    }
+
+    public static AccessToken transformAccessToken(AbstractTokenMapper mapper, ProtocolMapperModel model,
+                                                   UserSessionModel userSession) {
+        return mapper.transformAccessToken(new AccessToken(), model, Mockito.mock(KeycloakSession.class),
+                userSession, Mockito.mock(ClientSessionContext.class));
+    }
+
+}
@@ -0,0 +1,67 @@
+package no.ssb.dapla.keycloak.mappers.shortname;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DomainMatcherTest {
+
+    private final DomainMatcher matcher = DomainMatcher.of(Set.of("ssb.no", "*.ssb.no", "*.statistics.com", "example.org", " "));
+
+    @Test
+    void shouldMatchExactDomains() {
+        assertThat(matcher.matches("ssb.no")).isTrue();
+        assertThat(matcher.matches("example.org")).isTrue();
+        assertThat(matcher.matches("EXAMPLE.org")).isTrue();
+        assertThat(matcher.matches("sub.example.org")).isFalse();
+        assertThat(matcher.matches("anexample.org")).isFalse();
+        assertThat(matcher.matches("example.or")).isFalse();
+    }
+
+    @Test
+    void shouldMatchSubdomainsOfWildcards() {
+        assertThat(matcher.matches("a.ssb.no")).isTrue();
+        assertThat(matcher.matches("x.y.ssb.no")).isTrue();
+        assertThat(matcher.matches("x.statistics.com")).isTrue();
+        assertThat(matcher.matches("statistics.com")).isFalse();
+        assertThat(matcher.matches(".statistics.com")).isFalse();
+        assertThat(matcher.matches("notssb.no")).isFalse();
+    }
+
+    @Test
+    void shouldMatchWildcardsRegardlessOfCase() {
+        DomainMatcher mixedCase = DomainMatcher.of(Set.of("*.SSB.no", "Example.ORG"));
+        assertThat(mixedCase.matches("team.ssb.NO")).isTrue();
+        assertThat(mixedCase.matches("A.B.Ssb.No")).isTrue();
+        assertThat(mixedCase.matches("example.org")).isTrue();
+        assertThat(mixedCase.matches("SSB.NO")).isFalse();
+    }
+
+    @Test
+    void shouldNotMatchSubdomainsOfExactDomains() {
+        DomainMatcher exact = DomainMatcher.of(Set.of("ssb.no"));
+        assertThat(exact.matches("ssb.no")).isTrue();
+        assertThat(exact.matches("team.ssb.no")).isFalse();
+        assertThat(exact.matches("no")).isFalse();
+        assertThat(exact.matches("xssb.no")).isFalse();
+    }
+
+    @Test
+    void shouldMatchBothTheDomainAndItsSubdomainsWithBothPatterns() {
+        DomainMatcher both = DomainMatcher.of(Set.of("ssb.no", "*.ssb.no"));
+        assertThat(both.matches("ssb.no")).isTrue();
+        assertThat(both.matches("team.ssb.no")).isTrue();
+        assertThat(both.matches("a.team.ssb.no")).isTrue();
+        assertThat(both.matches(".ssb.no")).isFalse();
+    }
+
+    @Test
+    void shouldMatchNothingWithoutPatterns() {
+        assertThat(DomainMatcher.of(Set.of()).matches("ssb.no")).isFalse();
+        assertThat(DomainMatcher.NONE.matches(null)).isFalse();
+        assertThat(matcher.matches("")).isFalse();
+    }
+
+}
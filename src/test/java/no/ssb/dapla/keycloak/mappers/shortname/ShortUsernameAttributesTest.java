@@ -0,0 +1,128 @@
+package no.ssb.dapla.keycloak.mappers.shortname;
+
+import no.ssb.dapla.keycloak.mappers.ConfigPropertyKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.UserModel;
+import org.mockito.Mockito;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShortUsernameAttributesTest {
+
+    private final Map<String, List<String>> attributes = new HashMap<>();
+    private final AtomicReference<String> email = new AtomicReference<>("john.doe@ssb.no");
+    private UserModel user;
+
+    @BeforeEach
+    void setUp() {
+        user = Mockito.mock(UserModel.class);
+        Mockito.when(user.getEmail()).thenAnswer(i -> email.get());
+        Mockito.when(user.getAttributes()).thenAnswer(i -> attributes);
+        Mockito.when(user.getFirstAttribute(Mockito.anyString())).thenAnswer(i -> {
+            List<String> values = attributes.get(i.<String>getArgument(0));
+            return values == null ? null : values.get(0);
+        });
+        Mockito.doAnswer(i -> attributes.put(i.getArgument(0), List.of(i.<String>getArgument(1))))
+                .when(user).setSingleAttribute(Mockito.anyString(), Mockito.anyString());
+        Mockito.doAnswer(i -> attributes.remove(i.<String>getArgument(0)))
+                .when(user).removeAttribute(Mockito.anyString());
+    }
+
+    @Test
+    void shouldPersistShortUsernameOnFirstUse() {
+        ShortUsernameMapper mapper = new ShortUsernameMapper();
+        ProtocolMapperModel model = model("true", "ssb.no");
+        ShortUsernameConfig config = ShortUsernameConfig.of(model);
+
+        assertThat(mapper.persistedShortUsername(model, user)).isEqualTo("john-doe");
+        assertThat(attributes).containsOnlyKeys("short_username." + config.version());
+
+        // Served from the attribute
+        attributes.put("short_username." + config.version(), List.of(
+                "stored" + attributes.get("short_username." + config.version()).get(0).substring("john-doe".length())));
+        assertThat(mapper.persistedShortUsername(model, user)).isEqualTo("stored");
+    }
+
+    @Test
+    void shouldRecomputeWhenEmailChanges() {
+        ShortUsernameMapper mapper = new ShortUsernameMapper();
+        ProtocolMapperModel model = model("true", "ssb.no");
+
+        assertThat(mapper.persistedShortUsername(model, user)).isEqualTo("john-doe");
+        email.set("john.doe@example.com");
+        assertThat(mapper.persistedShortUsername(model, user)).isEqualTo("example-john-doe");
+    }
+
+    @Test
+    void shouldNotUseValueComputedFromAnotherEmail() {
+        ShortUsernameConfig config = ShortUsernameConfig.of(model("true", "ssb.no"));
+        ShortUsernameAttributes.write(user, config, "john-doe");
+        assertThat(ShortUsernameAttributes.read(user, config)).isEqualTo("john-doe");
+        assertThat(attributes.get("short_username." + config.version()).get(0)).matches("john-doe;[0-9a-f]{16}");
+
+        email.set("jane.doe@ssb.no");
+        assertThat(ShortUsernameAttributes.read(user, config)).isNull();
+    }
+
+    @Test
+    void configVersionShouldFollowConfig() {
+        assertThat(ShortUsernameConfig.of(model("true", "ssb.no, example.com")).version())
+                .isEqualTo(ShortUsernameConfig.of(model("true", "example.com,ssb.no")).version())
+                .isNotEqualTo(ShortUsernameConfig.of(model("true", "ssb.no")).version())
+                .isNotEqualTo(ShortUsernameConfig.of(model("false", "ssb.no, example.com")).version());
+    }
+
+    @Test
+    void shouldRecomputeAndRemoveObsoleteShortUsernames() {
+        attributes.put("short_username.obsolete", List.of("old;123"));
+        attributes.put("other", List.of("kept"));
+        ShortUsernameConfig withPrefix = ShortUsernameConfig.of(model("true", null));
+        ShortUsernameConfig withoutPrefix = ShortUsernameConfig.of(model("false", null));
+
+        ShortUsernameAttributes.recompute(user, List.of(withPrefix, withoutPrefix));
+
+        assertThat(attributes).containsOnlyKeys("other",
+                "short_username." + withPrefix.version(), "short_username." + withoutPrefix.version());
+        assertThat(ShortUsernameAttributes.read(user, withPrefix)).isEqualTo("ssb-john-doe");
+        assertThat(ShortUsernameAttributes.read(user, withoutPrefix)).isEqualTo("john-doe");
+    }
+
+    @Test
+    void shouldOnlyWriteShortUsernamesThatChanged() {
+        ShortUsernameConfig config = ShortUsernameConfig.of(model("true", "ssb.no"));
+
+        ShortUsernameAttributes.recompute(user, List.of(config));
+        ShortUsernameAttributes.recompute(user, List.of(config));
+        Mockito.verify(user, Mockito.times(1)).setSingleAttribute(Mockito.anyString(), Mockito.anyString());
+
+        email.set("john.doe@example.com");
+        ShortUsernameAttributes.recompute(user, List.of(config));
+        Mockito.verify(user, Mockito.times(2)).setSingleAttribute(Mockito.anyString(), Mockito.anyString());
+        assertThat(ShortUsernameAttributes.read(user, config)).isEqualTo("example-john-doe");
+
+        email.set(null);
+        ShortUsernameAttributes.recompute(user, List.of(config));
+        ShortUsernameAttributes.recompute(user, List.of(config));
+        Mockito.verify(user, Mockito.times(1)).removeAttribute(Mockito.anyString());
+    }
+
+    private static ProtocolMapperModel model(String useDomainAsPrefix, String domainsNotUsedAsPrefix) {
+        Map<String, String> config = new HashMap<>();
+        config.put(ShortUsernameMapper.ConfigPropertyKey.USE_DOMAIN_AS_PREFIX, useDomainAsPrefix);
+        config.put(ShortUsernameMapper.ConfigPropertyKey.DOMAINS_NOT_USED_AS_PREFIX, domainsNotUsedAsPrefix);
+        config.put(ShortUsernameMapper.ConfigPropertyKey.PERSIST_AS_ATTRIBUTE, "true");
+        config.put(ConfigPropertyKey.VERBOSE_LOGGING, "false");
+        ProtocolMapperModel model = new ProtocolMapperModel();
+        model.setProtocolMapper(ShortUsernameMapper.PROVIDER_ID);
+        model.setConfig(config);
+        return model;
+    }
+
+}
@@ -0,0 +1,129 @@
+package no.ssb.dapla.keycloak.mappers.shortname;
+
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.UserModel;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShortUsernameBackfillTest {
+
+    private static final ShortUsernameConfig CONFIG = ShortUsernameConfig.of(model());
+
+    @Test
+    void shouldBackfillAllUsersInPages() {
+        List<UserModel> users = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            users.add(user("id-" + i, "user." + i + "@ssb.no"));
+        }
+        users.add(user("no-email", null));
+        ListPages pages = new ListPages(users, 0);
+
+        ShortUsernameBackfill backfill = new ShortUsernameBackfill(pages, List.of(CONFIG), 10, 4);
+        backfill.run();
+
+        ShortUsernameBackfill.Progress progress = backfill.progress();
+        assertThat(progress.state()).isEqualTo(ShortUsernameBackfill.State.COMPLETED);
+        assertThat(progress.processed()).isEqualTo(26);
+        assertThat(progress.updated()).isEqualTo(25);
+        assertThat(progress.failed()).isEqualTo(1);
+        assertThat(progress.collisions()).isZero();
+        assertThat(pages.transactions).isEqualTo(3);
+        assertThat(ShortUsernameAttributes.read(users.get(7), CONFIG)).isEqualTo("user-7");
+
+        // Nothing is written again
+        ShortUsernameBackfill again = new ShortUsernameBackfill(new ListPages(users, 0), List.of(CONFIG), 10, 4);
+        again.run();
+        assertThat(again.progress().updated()).isZero();
+    }
+
+    @Test
+    void parallelismShouldBeCappedAtAvailableProcessors() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        assertThat(ShortUsernameBackfill.parallelism(0)).isEqualTo(1);
+        assertThat(ShortUsernameBackfill.parallelism(1)).isEqualTo(1);
+        assertThat(ShortUsernameBackfill.parallelism(Integer.MAX_VALUE)).isEqualTo(processors);
+
+        ShortUsernameBackfill backfill = new ShortUsernameBackfill(new ListPages(List.of(), 0), List.of(CONFIG), 10, 100_000);
+        backfill.run();
+        assertThat(backfill.progress().state()).isEqualTo(ShortUsernameBackfill.State.COMPLETED);
+    }
+
+    @Test
+    void shouldResumeFromOffset() {
+        List<UserModel> users = List.of(
+                user("a", "a@ssb.no"), user("b", "b@ssb.no"), user("c", "c@ssb.no"));
+
+        ShortUsernameBackfill backfill = new ShortUsernameBackfill(new ListPages(users, 2), List.of(CONFIG), 10, 1);
+        backfill.run();
+
+        assertThat(backfill.progress().processed()).isEqualTo(1);
+        assertThat(ShortUsernameAttributes.read(users.get(0), CONFIG)).isNull();
+        assertThat(ShortUsernameAttributes.read(users.get(2), CONFIG)).isEqualTo("c");
+    }
+
+    @Test
+    void shouldDetectCollisions() {
+        List<UserModel> users = List.of(
+                user("a", "john.doe@ssb.no"), user("b", "john_doe@ssb.no"), user("c", "jane.doe@ssb.no"));
+
+        ShortUsernameBackfill backfill = new ShortUsernameBackfill(new ListPages(users, 0), List.of(CONFIG), 2, 2);
+        backfill.run();
+
+        assertThat(backfill.progress().collisions()).isEqualTo(1);
+        assertThat(backfill.progress().collisionSamples()).containsExactly("john-doe (users a, b)");
+    }
+
+    private static ProtocolMapperModel model() {
+        Map<String, String> config = new HashMap<>();
+        config.put(ShortUsernameMapper.ConfigPropertyKey.USE_DOMAIN_AS_PREFIX, "true");
+        config.put(ShortUsernameMapper.ConfigPropertyKey.DOMAINS_NOT_USED_AS_PREFIX, "ssb.no");
+        config.put(ShortUsernameMapper.ConfigPropertyKey.PERSIST_AS_ATTRIBUTE, "true");
+        ProtocolMapperModel model = new ProtocolMapperModel();
+        model.setConfig(config);
+        return model;
+    }
+
+    private static UserModel user(String id, String email) {
+        Map<String, String> attributes = new HashMap<>();
+        UserModel user = Mockito.mock(UserModel.class);
+        Mockito.when(user.getId()).thenReturn(id);
+        Mockito.when(user.getEmail()).thenReturn(email);
+        Mockito.when(user.getFirstAttribute(Mockito.anyString())).thenAnswer(i -> attributes.get(i.<String>getArgument(0)));
+        Mockito.doAnswer(i -> attributes.put(i.getArgument(0), i.getArgument(1)))
+                .when(user).setSingleAttribute(Mockito.anyString(), Mockito.anyString());
+        return user;
+    }
+
+    private static class ListPages implements ShortUsernameBackfill.Pages {
+        private final List<UserModel> users;
+        private final long resumeOffset;
+        private int transactions;
+
+        ListPages(List<UserModel> users, long resumeOffset) {
+            this.users = users;
+            this.resumeOffset = resumeOffset;
+        }
+
+        @Override
+        public long resumeOffset() {
+            return resumeOffset;
+        }
+
+        @Override
+        public int inTransaction(long offset, int pageSize, Consumer<List<UserModel>> batch) {
+            transactions++;
+            List<UserModel> page = users.subList((int) Math.min(offset, users.size()), (int) Math.min(offset + pageSize, users.size()));
+            batch.accept(page);
+            return page.size();
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+package no.ssb.dapla.keycloak.mappers.shortname;
+
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.mockito.Mockito;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShortUsernameEventListenerProviderTest {
+
+    @Test
+    void shouldOnlyReactToUserUpdates() {
+        assertThat(ShortUsernameEventListenerProvider.updatedUserId(adminEvent(ResourceType.USER, OperationType.UPDATE, "users/123")))
+                .isEqualTo("123");
+        assertThat(ShortUsernameEventListenerProvider.updatedUserId(adminEvent(ResourceType.USER, OperationType.DELETE, "users/123")))
+                .isNull();
+        assertThat(ShortUsernameEventListenerProvider.updatedUserId(adminEvent(ResourceType.USER, OperationType.UPDATE, "users/123/reset-password")))
+                .isNull();
+        assertThat(ShortUsernameEventListenerProvider.updatedUserId(adminEvent(ResourceType.CLIENT, OperationType.UPDATE, "clients/123")))
+                .isNull();
+    }
+
+    @Test
+    void shouldRemoveShortUsernamesWhenNoMapperPersistsThem() {
+        Map<String, List<String>> attributes = new HashMap<>();
+        attributes.put("short_username.obsolete", List.of("john-doe;123"));
+        attributes.put("other", List.of("kept"));
+        UserModel user = Mockito.mock(UserModel.class);
+        Mockito.when(user.getAttributes()).thenReturn(attributes);
+        Mockito.doAnswer(i -> attributes.remove(i.<String>getArgument(0)))
+                .when(user).removeAttribute(Mockito.anyString());
+        RealmModel realm = Mockito.mock(RealmModel.class);
+        Mockito.when(realm.getClientsStream()).thenAnswer(i -> Stream.empty());
+        Mockito.when(realm.getClientScopesStream()).thenAnswer(i -> Stream.empty());
+
+        ShortUsernameEventListenerProvider.recompute(realm, user);
+
+        assertThat(attributes).containsOnlyKeys("other");
+    }
+
+    private static AdminEvent adminEvent(ResourceType resourceType, OperationType operationType, String resourcePath) {
+        AdminEvent event = new AdminEvent();
+        event.setResourceType(resourceType);
+        event.setOperationType(operationType);
+        event.setResourcePath(resourcePath);
+        return event;
+    }
+
+}
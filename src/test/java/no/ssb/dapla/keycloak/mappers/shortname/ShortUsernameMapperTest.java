@@ -40,6 +40,15 @@ public class ShortUsernameMapperTest {
         assertThat(result).isEqualTo("domain-test-user");
     }
 
+    @Test
+    void testEmailToShortUsername_WildcardDomain() throws Exception {
+        Set<String> domainsNotUsedAsPrefix = Set.of("domain.com", "*.domain.com");
+
+        assertThat(mapper.emailToShortUsername("test.user@sub.domain.com", true, domainsNotUsedAsPrefix)).isEqualTo("test-user");
+        assertThat(mapper.emailToShortUsername("test.user@domain.com", true, domainsNotUsedAsPrefix)).isEqualTo("test-user");
+        assertThat(mapper.emailToShortUsername("test.user@otherdomain.com", true, domainsNotUsedAsPrefix)).isEqualTo("otherdomain-test-user");
+    }
+
     @Test
     void testEmailToShortUsername_NoPrefix() throws Exception {
         String email = "test.user@domain.com";
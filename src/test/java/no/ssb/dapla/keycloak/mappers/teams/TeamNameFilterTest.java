@@ -0,0 +1,59 @@
+package no.ssb.dapla.keycloak.mappers.teams;
+
+import no.ssb.dapla.keycloak.DaplaKeycloakException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TeamNameFilterTest {
+
+    private static final List<String> TEAMS = List.of("play-foeniks-a", "play-foeniks-b", "demo-enhjoern-a", "dapla-felles");
+
+    @Test
+    void noPatternsShouldAllowAll() {
+        TeamNameFilter filter = TeamNameFilter.compile(List.of(), List.of());
+        assertThat(filter).isSameAs(TeamNameFilter.ALLOW_ALL);
+        assertThat(filter.filter(TEAMS)).isEqualTo(TEAMS);
+    }
+
+    @Test
+    void includeExactAndPrefix() {
+        TeamNameFilter filter = TeamNameFilter.compile(List.of("play-*", "dapla-felles"), List.of());
+        assertThat(filter.filter(TEAMS)).containsExactly("play-foeniks-a", "play-foeniks-b", "dapla-felles");
+    }
+
+    @Test
+    void exactPatternShouldNotMatchLongerNames() {
+        TeamNameFilter filter = TeamNameFilter.compile(List.of("play-foeniks"), List.of());
+        assertThat(filter.filter(TEAMS)).isEmpty();
+    }
+
+    @Test
+    void excludeTakesPrecedence() {
+        TeamNameFilter filter = TeamNameFilter.compile(List.of("play-*"), List.of("play-foeniks-b"));
+        assertThat(filter.filter(TEAMS)).containsExactly("play-foeniks-a");
+    }
+
+    @Test
+    void excludeOnly() {
+        TeamNameFilter filter = TeamNameFilter.compile(List.of(), List.of("demo-*"));
+        assertThat(filter.filter(TEAMS)).containsExactly("play-foeniks-a", "play-foeniks-b", "dapla-felles");
+    }
+
+    @Test
+    void singleWildcardMatchesEverything() {
+        TeamNameFilter filter = TeamNameFilter.compile(List.of("*"), List.of("dapla-*"));
+        assertThat(filter.filter(TEAMS)).containsExactly("play-foeniks-a", "play-foeniks-b", "demo-enhjoern-a");
+    }
+
+    @Test
+    void wildcardInsidePatternIsNotSupported() {
+        assertThatThrownBy(() -> TeamNameFilter.compile(List.of("play-*-a"), List.of()))
+                .isInstanceOf(DaplaKeycloakException.class)
+                .hasMessageContaining("play-*-a");
+    }
+
+}
@@ -0,0 +1,67 @@
+package no.ssb.dapla.keycloak.mappers.teams;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import no.ssb.dapla.keycloak.mappers.ConfigPropertyKey;
+import no.ssb.dapla.keycloak.mappers.TokenMapperFixture;
+import no.ssb.dapla.keycloak.services.teamapi.DummyDaplaTeamApiService;
+import no.ssb.dapla.keycloak.services.teamapi.TeamsAndGroups;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.ClientSessionContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.protocol.oidc.mappers.OIDCAttributeMapperHelper;
+import org.keycloak.representations.IDToken;
+import org.mockito.Mockito;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TeamsAndGroupsMapperTest {
+
+    private ProtocolMapperModel protocolMapperModel;
+    private UserSessionModel userSessionModel;
+    private IDToken idToken;
+    private KeycloakSession keycloakSession;
+    private ClientSessionContext clientSessionContext;
+    private TeamsAndGroupsMapper mapper;
+
+    @BeforeEach
+    void setUp() {
+        protocolMapperModel = new ProtocolMapperModel();
+        protocolMapperModel.setConfig(Map.of(
+                ConfigPropertyKey.VERBOSE_LOGGING, Boolean.TRUE.toString(),
+                OIDCAttributeMapperHelper.TOKEN_CLAIM_NAME, "teams",
+                OIDCAttributeMapperHelper.JSON_TYPE, "JSON",
+                TeamsMapper.ConfigPropertyKey.API_IMPL, DummyDaplaTeamApiService.NAME,
+                TeamsAndGroupsMapper.ConfigPropertyKey.GROUPS_CLAIM_NAME, "access_groups"
+        ));
+
+        userSessionModel = TokenMapperFixture.userSession(TokenMapperFixture.USER_EMAIL);
+        idToken = new IDToken();
+        keycloakSession = Mockito.mock(KeycloakSession.class);
+        clientSessionContext = Mockito.mock(ClientSessionContext.class);
+        mapper = new TeamsAndGroupsMapper();
+    }
+
+    @Test
+    void testMapToClaimUsingDummyDaplaTeamApiService() {
+        Object claim = mapper.mapToClaim(idToken, protocolMapperModel, userSessionModel, keycloakSession, clientSessionContext);
+        assertThat(claim).isInstanceOf(TeamsAndGroups.class);
+        assertThat(((TeamsAndGroups) claim).teams()).containsExactly("demo-enhjoern-æ", "demo-enhjoern-ø");
+        assertThat(((TeamsAndGroups) claim).groups()).hasSize(3);
+    }
+
+    @Test
+    void testApplyClaimPopulatesBothClaims() {
+        Object claim = mapper.mapToClaim(idToken, protocolMapperModel, userSessionModel, keycloakSession, clientSessionContext);
+        mapper.applyClaim(idToken, protocolMapperModel, claim);
+
+        assertThat(idToken.getOtherClaims()).containsKeys("teams", "access_groups");
+        assertThat(((JsonNode) idToken.getOtherClaims().get("teams")).size()).isEqualTo(2);
+        assertThat(((JsonNode) idToken.getOtherClaims().get("access_groups")).size()).isEqualTo(3);
+    }
+
+}
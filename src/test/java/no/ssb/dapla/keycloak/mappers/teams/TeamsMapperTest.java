@@ -1,7 +1,10 @@
 package no.ssb.dapla.keycloak.mappers.teams;
 
 import no.ssb.dapla.keycloak.mappers.ConfigPropertyKey;
+import no.ssb.dapla.keycloak.mappers.TokenMapperFixture;
 import no.ssb.dapla.keycloak.services.teamapi.DummyDaplaTeamApiService;
+import no.ssb.dapla.keycloak.services.teamapi.RetryPolicy;
+import no.ssb.dapla.keycloak.services.teamapi.ScatterGatherDaplaTeamApiService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.keycloak.models.ClientSessionContext;
@@ -11,6 +14,7 @@ import org.keycloak.models.UserSessionModel;
 import org.keycloak.representations.IDToken;
 import org.mockito.Mockito;
 
+import java.time.Duration;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -32,7 +36,7 @@ class TeamsMapperTest {
                 TeamsMapper.ConfigPropertyKey.API_IMPL, DummyDaplaTeamApiService.NAME
         ));
 
-        userSessionModel = Mockito.mock(UserSessionModel.class);  // assuming you are using mockito
+        userSessionModel = TokenMapperFixture.userSession(TokenMapperFixture.USER_EMAIL);
         idToken = new IDToken();
         keycloakSession = Mockito.mock(KeycloakSession.class);  // assuming you are using mockito
         clientSessionContext = Mockito.mock(ClientSessionContext.class);  // assuming you are using mockito
@@ -47,4 +51,85 @@ class TeamsMapperTest {
         assertThat((String) claim).isEqualTo("""
                 ["demo-enhjoern-æ","demo-enhjoern-ø"]""");
     }
+
+    @Test
+    void testMapToClaimWithTeamFilter() {
+        protocolMapperModel.setConfig(Map.of(
+                ConfigPropertyKey.VERBOSE_LOGGING, Boolean.TRUE.toString(),
+                TeamsMapper.ConfigPropertyKey.API_IMPL, DummyDaplaTeamApiService.NAME,
+                TeamsMapper.ConfigPropertyKey.INCLUDE_TEAMS, "demo-*",
+                TeamsMapper.ConfigPropertyKey.EXCLUDE_TEAMS, "demo-enhjoern-æ"
+        ));
+
+        Object claim = teamsMapper.mapToClaim(idToken, protocolMapperModel, userSessionModel, keycloakSession, clientSessionContext);
+        assertThat((String) claim).isEqualTo("""
+                ["demo-enhjoern-ø"]""");
+        assertThat(teamsMapper.teamNameFilter(protocolMapperModel)).isSameAs(teamsMapper.teamNameFilter(protocolMapperModel));
+    }
+
+    @Test
+    void testMapToClaimUsingSyntheticTeamDirectory() {
+        protocolMapperModel.setConfig(Map.of(
+                ConfigPropertyKey.VERBOSE_LOGGING, Boolean.TRUE.toString(),
+                TeamsMapper.ConfigPropertyKey.API_IMPL, DummyDaplaTeamApiService.NAME,
+                TeamsMapper.ConfigPropertyKey.DUMMY_USERS, "100",
+                TeamsMapper.ConfigPropertyKey.DUMMY_TEAMS, "10",
+                TeamsMapper.ConfigPropertyKey.DUMMY_TEAM_NAME_LENGTH, "12"
+        ));
+
+        Object claim = teamsMapper.mapToClaim(idToken, protocolMapperModel, userSessionModel, keycloakSession, clientSessionContext);
+        assertThat((String) claim).matches("\\[\"team-[0-9a-z]-[a-z]{5}\"(,\"team-[0-9a-z]-[a-z]{5}\")*]");
+        assertThat(teamsMapper.mapToClaim(idToken, protocolMapperModel, userSessionModel, keycloakSession, clientSessionContext))
+                .isEqualTo(claim);
+    }
+
+    @Test
+    void testMapToClaimMergesAdditionalSources() {
+        protocolMapperModel.setConfig(Map.of(
+                ConfigPropertyKey.VERBOSE_LOGGING, Boolean.TRUE.toString(),
+                TeamsMapper.ConfigPropertyKey.API_IMPL, DummyDaplaTeamApiService.NAME,
+                TeamsMapper.ConfigPropertyKey.ADDITIONAL_SOURCES, "Dummy|none|500, Dummy|none"
+        ));
+
+        Object claim = teamsMapper.mapToClaim(idToken, protocolMapperModel, userSessionModel, keycloakSession, clientSessionContext);
+        assertThat((String) claim).isEqualTo("""
+                ["demo-enhjoern-æ","demo-enhjoern-ø"]""");
+        assertThat(teamsMapper.teamApiService(protocolMapperModel)).isInstanceOf(ScatterGatherDaplaTeamApiService.class);
+    }
+
+    @Test
+    void testSourceTimeoutDefaultsToLatencyBudget() {
+        protocolMapperModel.setConfig(Map.of(
+                TeamsMapper.ConfigPropertyKey.API_IMPL, DummyDaplaTeamApiService.NAME,
+                TeamsMapper.ConfigPropertyKey.LATENCY_BUDGET_MILLIS, "1500"
+        ));
+        assertThat(teamsMapper.sourceTimeout(protocolMapperModel)).isEqualTo(Duration.ofMillis(1500));
+
+        protocolMapperModel.setConfig(Map.of(
+                TeamsMapper.ConfigPropertyKey.API_IMPL, DummyDaplaTeamApiService.NAME,
+                TeamsMapper.ConfigPropertyKey.SOURCE_TIMEOUT_MILLIS, "700"
+        ));
+        assertThat(teamsMapper.sourceTimeout(protocolMapperModel)).isEqualTo(Duration.ofMillis(700));
+
+        protocolMapperModel.setConfig(Map.of());
+        assertThat(teamsMapper.sourceTimeout(protocolMapperModel)).isEqualTo(RetryPolicy.DEFAULT_LATENCY_BUDGET);
+    }
+
+    @Test
+    void testTeamApiSourceKeyIgnoresTeamFilters() {
+        ProtocolMapperModel filtered = new ProtocolMapperModel();
+        filtered.setConfig(Map.of(
+                ConfigPropertyKey.VERBOSE_LOGGING, Boolean.TRUE.toString(),
+                TeamsMapper.ConfigPropertyKey.API_IMPL, DummyDaplaTeamApiService.NAME,
+                TeamsMapper.ConfigPropertyKey.INCLUDE_TEAMS, "demo-*"
+        ));
+        ProtocolMapperModel otherSource = new ProtocolMapperModel();
+        otherSource.setConfig(Map.of(
+                TeamsMapper.ConfigPropertyKey.API_IMPL, DummyDaplaTeamApiService.NAME,
+                TeamsMapper.ConfigPropertyKey.DUMMY_USERS, "10"
+        ));
+
+        assertThat(TeamsMapper.teamApiSourceKey(filtered)).isEqualTo(TeamsMapper.teamApiSourceKey(protocolMapperModel));
+        assertThat(TeamsMapper.teamApiSourceKey(otherSource)).isNotEqualTo(TeamsMapper.teamApiSourceKey(protocolMapperModel));
+    }
 }
@@ -0,0 +1,49 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import no.ssb.dapla.keycloak.DaplaKeycloakException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BlockingDaplaTeamApiServiceTest {
+
+    @Test
+    void shouldWaitForAsyncLookups() {
+        BlockingDaplaTeamApiService service = new BlockingDaplaTeamApiService(user ->
+                CompletableFuture.supplyAsync(() -> new TeamsAndGroups(List.of("team-a"), List.of("team-a-developers"))));
+
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-a");
+        assertThat(service.getGroups("jane.doe@ssb.no")).containsExactly("team-a-developers");
+    }
+
+    @Test
+    void shouldRethrowFailuresAsIs() {
+        UnknownTeamApiUserException unknown = new UnknownTeamApiUserException();
+        BlockingDaplaTeamApiService service = new BlockingDaplaTeamApiService(user -> CompletableFuture.failedFuture(unknown));
+
+        assertThatThrownBy(() -> service.getTeamsAndGroups("jane.doe@ssb.no")).isSameAs(unknown);
+        assertThatThrownBy(() -> service.getTeams("jane.doe@ssb.no")).isSameAs(unknown);
+    }
+
+    @Test
+    void shouldCancelLookupWhenInterrupted() {
+        CompletableFuture<TeamsAndGroups> lookup = new CompletableFuture<>();
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThatThrownBy(() -> BlockingDaplaTeamApiService.await(lookup))
+                    .isInstanceOf(DaplaKeycloakException.class)
+                    .hasMessageContaining("Interrupted");
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+        }
+        finally {
+            Thread.interrupted();
+        }
+        assertThat(lookup).isCancelled();
+    }
+
+}
@@ -0,0 +1,73 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import no.ssb.dapla.keycloak.DaplaKeycloakException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DaplaTeamApiServiceTest {
+
+    @Test
+    void getTeamsAndGroupsShouldFetchConcurrently() {
+        CountDownLatch teamsStarted = new CountDownLatch(1);
+        CountDownLatch groupsStarted = new CountDownLatch(1);
+
+        // Each call waits for the other one to start, which only completes if they run concurrently
+        DaplaTeamApiService service = new DaplaTeamApiService() {
+            @Override
+            public List<String> getTeams(String user) {
+                teamsStarted.countDown();
+                await(groupsStarted);
+                return List.of("team-a");
+            }
+
+            @Override
+            public List<String> getGroups(String user) {
+                groupsStarted.countDown();
+                await(teamsStarted);
+                return List.of("team-a-developers");
+            }
+        };
+
+        TeamsAndGroups result = service.getTeamsAndGroups("jane.doe@ssb.no");
+        assertThat(result.teams()).containsExactly("team-a");
+        assertThat(result.groups()).containsExactly("team-a-developers");
+    }
+
+    @Test
+    void getTeamsAndGroupsShouldPropagateErrors() {
+        DaplaTeamApiService service = new DaplaTeamApiService() {
+            @Override
+            public List<String> getTeams(String user) {
+                return List.of("team-a");
+            }
+
+            @Override
+            public List<String> getGroups(String user) {
+                throw new DaplaKeycloakException("Boom");
+            }
+        };
+
+        assertThatThrownBy(() -> service.getTeamsAndGroups("jane.doe@ssb.no"))
+                .isInstanceOf(DaplaKeycloakException.class)
+                .hasMessage("Boom");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out waiting for concurrent call");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
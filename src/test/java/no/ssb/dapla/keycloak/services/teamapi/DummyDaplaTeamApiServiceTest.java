@@ -0,0 +1,118 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class DummyDaplaTeamApiServiceTest {
+
+    @Test
+    void shouldReturnDemoTeamsByDefault() {
+        DummyDaplaTeamApiService service = new DummyDaplaTeamApiService();
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("demo-enhjoern-æ", "demo-enhjoern-ø");
+        assertThat(service.getGroups("john.doe@ssb.no")).hasSize(3);
+    }
+
+    @Test
+    void syntheticDirectoryShouldBeDeterministic() {
+        SyntheticTeamDirectory.Config config = SyntheticTeamDirectory.Config.of(7L, 1000, 200, 1.0, 30, null);
+        DummyDaplaTeamApiService service = new DummyDaplaTeamApiService(config);
+        DummyDaplaTeamApiService other = new DummyDaplaTeamApiService(config);
+        DummyDaplaTeamApiService otherSeed = new DummyDaplaTeamApiService(
+                SyntheticTeamDirectory.Config.of(8L, 1000, 200, 1.0, 30, null));
+
+        int differences = 0;
+        for (int i = 0; i < 100; i++) {
+            String user = "user" + i + "@ssb.no";
+            TeamsAndGroups teamsAndGroups = service.getTeamsAndGroups(user);
+            assertThat(other.getTeamsAndGroups(user)).isEqualTo(teamsAndGroups);
+            assertThat(teamsAndGroups.teams())
+                    .isNotEmpty()
+                    .doesNotHaveDuplicates()
+                    .allSatisfy(team -> assertThat(team).startsWith("team-").hasSize(30));
+            assertThat(teamsAndGroups.groups()).contains(teamsAndGroups.teams().get(0) + "-developers");
+            if (!otherSeed.getTeamsAndGroups(user).equals(teamsAndGroups)) {
+                differences++;
+            }
+        }
+        assertThat(differences).isGreaterThan(50);
+    }
+
+    @Test
+    void syntheticMembershipsShouldBeSkewed() {
+        DummyDaplaTeamApiService service = new DummyDaplaTeamApiService(
+                SyntheticTeamDirectory.Config.of(null, 10_000, 500, 1.0, null, null));
+
+        int singleTeamUsers = 0;
+        int maxTeams = 0;
+        for (int i = 0; i < 10_000; i++) {
+            int teams = service.getTeams("user" + i + "@ssb.no").size();
+            if (teams == 1) {
+                singleTeamUsers++;
+            }
+            maxTeams = Math.max(maxTeams, teams);
+        }
+
+        // With a Zipf exponent of 1 and at most 50 teams per user, roughly 22% of the users are in a single team
+        assertThat(singleTeamUsers).isBetween(1500, 3000);
+        assertThat(maxTeams).isGreaterThan(20).isLessThanOrEqualTo(SyntheticTeamDirectory.Config.DEFAULT_MAX_TEAMS_PER_USER);
+    }
+
+    @Test
+    void syntheticDirectoryShouldHaveConfiguredNumberOfUsers() {
+        DummyDaplaTeamApiService service = new DummyDaplaTeamApiService(
+                SyntheticTeamDirectory.Config.of(null, 3, 1000, 0.0, null, null));
+
+        Set<TeamsAndGroups> distinct = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            distinct.add(service.getTeamsAndGroups("user" + i + "@ssb.no"));
+        }
+        assertThat(distinct).hasSizeLessThanOrEqualTo(3);
+    }
+
+    @Test
+    void syntheticDirectoryShouldDrawDistinctTeamsWithHighExponents() {
+        DummyDaplaTeamApiService service = new DummyDaplaTeamApiService(
+                new SyntheticTeamDirectory.Config(1, 1000, 10_000, 2000, 5.0, 10, Duration.ZERO));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            for (int i = 0; i < 1000; i++) {
+                assertThat(service.getTeams("user" + i + "@ssb.no")).doesNotHaveDuplicates();
+            }
+        });
+    }
+
+    @Test
+    void sampleWithoutShouldSkipDrawnTeams() {
+        double[] cdf = SyntheticTeamDirectory.zipfCdf(4, 0.0);
+
+        assertThat(SyntheticTeamDirectory.sampleWithout(cdf, new int[] {0, 2}, 2, 0.1)).isEqualTo(1);
+        assertThat(SyntheticTeamDirectory.sampleWithout(cdf, new int[] {0, 2}, 2, 0.3)).isEqualTo(3);
+        assertThat(SyntheticTeamDirectory.sampleWithout(cdf, new int[] {1, 2, 3}, 3, 0.2)).isEqualTo(0);
+        assertThat(SyntheticTeamDirectory.sampleWithout(cdf, new int[] {0, 1, 2}, 3, 0.2)).isEqualTo(3);
+    }
+
+    @Test
+    void syntheticDirectoriesShouldBeBounded() {
+        for (int i = 0; i < SyntheticTeamDirectory.MAX_DIRECTORIES * 2; i++) {
+            SyntheticTeamDirectory.of(SyntheticTeamDirectory.Config.of((long) i, 10, 10, null, null, null));
+        }
+        assertThat(SyntheticTeamDirectory.directoryCount()).isLessThanOrEqualTo(SyntheticTeamDirectory.MAX_DIRECTORIES);
+    }
+
+    @Test
+    void syntheticDirectoryShouldSimulateLatency() {
+        DummyDaplaTeamApiService service = new DummyDaplaTeamApiService(
+                new SyntheticTeamDirectory.Config(1, 10, 10, 5, 1.0, 10, Duration.ofMillis(50)));
+
+        long start = System.nanoTime();
+        service.getTeams("jane.doe@ssb.no");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(50));
+    }
+
+}
@@ -0,0 +1,117 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileDaplaTeamApiServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldLookUpUsers() throws IOException {
+        Path file = write(tempDir.resolve("teams.ndjson"), """
+                {"user": "jane.doe@ssb.no", "teams": ["team-a", "team-b"], "groups": ["team-a-developers"]}
+
+                {"ignored": {"nested": [1, 2]}, "user": "john.doe@ssb.no", "teams": ["team-b"]}
+                {"user": "jane.doe@ssb.no", "teams": ["team-c"]}
+                """);
+        FileDaplaTeamApiService service = new FileDaplaTeamApiService(file.toString());
+
+        assertThat(service.size()).isEqualTo(2);
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-c");
+        assertThat(service.getTeamsAndGroups("john.doe@ssb.no").teams()).containsExactly("team-b");
+        assertThat(service.getGroups("john.doe@ssb.no")).isEmpty();
+        assertThatThrownBy(() -> service.getTeams("unknown@ssb.no")).isInstanceOf(UnknownTeamApiUserException.class);
+    }
+
+    @Test
+    void shouldApplyTheLimitsOfEachService() throws IOException {
+        Path file = write(tempDir.resolve("limits.ndjson"), """
+                {"user": "jane.doe@ssb.no", "teams": ["team-a", "team-b"]}
+                {"user": "john.doe@ssb.no", "teams": ["team-b"]}
+                """);
+        FileDaplaTeamApiService service = new FileDaplaTeamApiService(file.toString());
+        FileDaplaTeamApiService limitedService = new FileDaplaTeamApiService(file.toString(), new TeamApiLimits(1024, 1));
+
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-a", "team-b");
+        assertThatThrownBy(() -> limitedService.getTeams("jane.doe@ssb.no"))
+                .isInstanceOf(TeamApiResponseTooLargeException.class)
+                .hasMessageContaining("more than 1 teams");
+        assertThat(limitedService.getTeams("john.doe@ssb.no")).containsExactly("team-b");
+    }
+
+    @Test
+    void shouldIndexManyUsers() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            sb.append("{\"user\": \"user").append(i).append("@ssb.no\", \"teams\": [\"team-").append(i % 100).append("\"]}\n");
+        }
+        Path file = write(tempDir.resolve("many.ndjson"), sb.toString());
+        FileDaplaTeamApiService service = new FileDaplaTeamApiService(file.toString());
+
+        assertThat(service.size()).isEqualTo(50_000);
+        assertThat(service.getTeams("user12345@ssb.no")).containsExactly("team-45");
+    }
+
+    @Test
+    void shouldReloadWhenFileIsReplaced() throws Exception {
+        Path file = write(tempDir.resolve("reload.ndjson"), """
+                {"user": "jane.doe@ssb.no", "teams": ["team-a"]}
+                """);
+        FileDaplaTeamApiService service = new FileDaplaTeamApiService(file.toString());
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-a");
+
+        Path replacement = write(tempDir.resolve("reload.ndjson.tmp"), """
+                {"user": "jane.doe@ssb.no", "teams": ["team-b"]}
+                """);
+        Files.move(replacement, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!service.getTeams("jane.doe@ssb.no").equals(List.of("team-b")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-b");
+    }
+
+    @Test
+    void shouldStopWatchingWhenLimitsChange() throws Exception {
+        Path file = write(tempDir.resolve("limits-change.ndjson"), """
+                {"user": "jane.doe@ssb.no", "teams": ["team-a"]}
+                """);
+        new FileDaplaTeamApiService(file.toString());
+        long watchers = watcherThreads();
+
+        for (int maxElements = 1; maxElements <= 5; maxElements++) {
+            FileDaplaTeamApiService service = new FileDaplaTeamApiService(file.toString(), new TeamApiLimits(1024, maxElements));
+            assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-a");
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (watcherThreads() > watchers && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(watcherThreads()).isLessThanOrEqualTo(watchers);
+        assertThat(FileDaplaTeamApiService.teamFileCount()).isLessThanOrEqualTo(FileDaplaTeamApiService.MAX_TEAM_FILES);
+    }
+
+    private static long watcherThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals(FileDaplaTeamApiService.WATCHER_THREAD_NAME) && thread.isAlive())
+                .count();
+    }
+
+    private static Path write(Path path, String content) throws IOException {
+        return Files.writeString(path, content);
+    }
+
+}
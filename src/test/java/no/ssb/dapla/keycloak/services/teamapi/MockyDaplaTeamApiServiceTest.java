@@ -0,0 +1,339 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import mockwebserver3.Dispatcher;
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import mockwebserver3.RecordedRequest;
+import mockwebserver3.SocketPolicy;
+import no.ssb.dapla.keycloak.DaplaKeycloakException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MockyDaplaTeamApiServiceTest {
+
+    private static final String TEAMS_JSON = """
+            {"teams": ["team-a", "team-b"], "groups": ["team-a-developers"]}""";
+
+    private MockWebServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void shouldServeFreshEntriesFromCache() throws Exception {
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON));
+        MockyDaplaTeamApiService service = service(Duration.ofMinutes(5));
+
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-a", "team-b");
+        assertThat(service.getGroups("jane.doe@ssb.no")).containsExactly("team-a-developers");
+
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        RecordedRequest request = server.takeRequest();
+        assertThat(request.getHeader(MockyDaplaTeamApiService.USER_HEADER)).isEqualTo("jane.doe@ssb.no");
+        assertThat(request.getRequestUrl().toString()).doesNotContain("jane.doe");
+        assertThat(service.stats().getCacheHits()).isEqualTo(1);
+    }
+
+    @Test
+    void configsWithDifferentSettingsShouldNotShareCache() {
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON));
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON));
+        MockyDaplaTeamApiService service = service(Duration.ofMinutes(5));
+        MockyDaplaTeamApiService otherService = service(Duration.ofMinutes(10));
+
+        service.getTeams("jane.doe@ssb.no");
+        otherService.getTeams("jane.doe@ssb.no");
+        service(Duration.ofMinutes(5)).getTeams("jane.doe@ssb.no");
+
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        assertThat(service.stats()).isNotSameAs(otherService.stats());
+        assertThat(service.stats().getCacheHits()).isEqualTo(1);
+        assertThat(TeamApiCache.existing(server.url("/").toString())).hasSize(2);
+    }
+
+    @Test
+    void shouldShareOneServiceAndLoaderPerConfig() {
+        TeamApiConfig config = new TeamApiConfig(server.url("/").toString(), TeamApiLimits.DEFAULT,
+                TeamApiCachePolicy.DEFAULT, RetryPolicy.DEFAULT);
+        MockyDaplaTeamApiService service = MockyDaplaTeamApiService.forConfig(config);
+        assertThat(MockyDaplaTeamApiService.forConfig(config)).isSameAs(service);
+
+        TeamApiCache cache = TeamApiCache.forConfig(config);
+        TeamApiRefreshScheduler.Refresher loader = cache.loader();
+        assertThat(loader).isNotNull();
+        new MockyDaplaTeamApiService(config);
+        assertThat(cache.loader()).isSameAs(loader);
+    }
+
+    @Test
+    void shouldRevalidateExpiredEntriesWithConditionalRequest() throws Exception {
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON).setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        MockyDaplaTeamApiService service = service(Duration.ZERO);
+
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-a", "team-b");
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-a", "team-b");
+
+        assertThat(server.takeRequest().getHeader("If-None-Match")).isNull();
+        assertThat(server.takeRequest().getHeader("If-None-Match")).isEqualTo("\"v1\"");
+
+        TeamApiStats stats = service.stats();
+        assertThat(stats.getRevalidations()).isEqualTo(1);
+        assertThat(stats.getNotModified()).isEqualTo(1);
+        assertThat(stats.getRevalidationHitRate()).isEqualTo(1.0);
+        assertThat(stats.getBytesSaved()).isEqualTo(TEAMS_JSON.length());
+    }
+
+    @Test
+    void shouldReplaceEntryWhenChanged() {
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON).setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setBody("""
+                {"teams": ["team-c"]}""").setHeader("ETag", "\"v2\""));
+        MockyDaplaTeamApiService service = service(Duration.ZERO);
+
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-a", "team-b");
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-c");
+        assertThat(service.stats().getNotModified()).isZero();
+    }
+
+    @Test
+    void shouldRequestCompressedResponsesOverTheSharedClient() throws Exception {
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON));
+        service(Duration.ZERO).getTeams("jane.doe@ssb.no");
+
+        assertThat(server.takeRequest().getHeader("Accept-Encoding")).isEqualTo("gzip");
+    }
+
+    @Test
+    void shouldCacheUnknownUsers() {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        MockyDaplaTeamApiService service = new MockyDaplaTeamApiService(server.url("/").toString(), TeamApiLimits.DEFAULT,
+                new TeamApiCachePolicy(Duration.ZERO, Duration.ofMinutes(1), RefreshAheadPolicy.DISABLED));
+
+        assertThatThrownBy(() -> service.getTeams("unknown@ssb.no")).isInstanceOf(UnknownTeamApiUserException.class);
+        assertThatThrownBy(() -> service.getTeams("unknown@ssb.no")).isInstanceOf(UnknownTeamApiUserException.class);
+
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        assertThat(service.stats().getNegativeCacheHits()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldCacheEmptyResultsWithNegativeTtl() {
+        server.enqueue(new MockResponse().setBody("""
+                {"teams": []}"""));
+        MockyDaplaTeamApiService service = new MockyDaplaTeamApiService(server.url("/").toString(), TeamApiLimits.DEFAULT,
+                new TeamApiCachePolicy(Duration.ZERO, Duration.ofMinutes(1), RefreshAheadPolicy.DISABLED));
+
+        assertThat(service.getTeams("newcomer@ssb.no")).isEmpty();
+        assertThat(service.getTeams("newcomer@ssb.no")).isEmpty();
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotCacheTransientErrors() {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON));
+        MockyDaplaTeamApiService service = new MockyDaplaTeamApiService(server.url("/").toString(), TeamApiLimits.DEFAULT,
+                TeamApiCachePolicy.of(Duration.ofMinutes(5)), retryPolicy(0, Duration.ofSeconds(5)));
+
+        assertThatThrownBy(() -> service.getTeams("jane.doe@ssb.no")).isInstanceOf(DaplaKeycloakException.class);
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-a", "team-b");
+    }
+
+    @Test
+    void shouldRetryTransientFailures() {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON));
+        MockyDaplaTeamApiService service = service(retryPolicy(2, Duration.ofSeconds(5)));
+
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-a", "team-b");
+        assertThat(server.getRequestCount()).isEqualTo(3);
+        assertThat(service.stats().getRetries()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotRetryPermanentFailures() {
+        server.enqueue(new MockResponse().setResponseCode(400));
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON));
+        MockyDaplaTeamApiService service = service(retryPolicy(2, Duration.ofSeconds(5)));
+
+        assertThatThrownBy(() -> service.getTeams("jane.doe@ssb.no")).isInstanceOf(DaplaKeycloakException.class);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotRetryMalformedResponses() {
+        server.enqueue(new MockResponse().setBody("{\"teams\": \"team-a\"}"));
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON));
+        MockyDaplaTeamApiService service = service(retryPolicy(2, Duration.ofSeconds(5)));
+
+        assertThatThrownBy(() -> service.getTeams("jane.doe@ssb.no"))
+                .isInstanceOf(DaplaKeycloakException.class)
+                .hasMessageContaining("Invalid response");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        assertThat(service.stats().getRetries()).isZero();
+    }
+
+    @Test
+    void shouldGiveUpAfterMaxRetries() {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+        MockyDaplaTeamApiService service = service(retryPolicy(1, Duration.ofSeconds(5)));
+
+        assertThatThrownBy(() -> service.getTeams("jane.doe@ssb.no")).isInstanceOf(DaplaKeycloakException.class);
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotRetryBeyondLatencyBudget() {
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON).setHeadersDelay(2, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON));
+        MockyDaplaTeamApiService service = service(retryPolicy(5, Duration.ofMillis(300)));
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> service.getTeams("jane.doe@ssb.no")).isInstanceOf(DaplaKeycloakException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void shouldStopRetryingWhenRetryBudgetIsExhausted() {
+        MockyDaplaTeamApiService service = service(new RetryPolicy(1, Duration.ZERO, Duration.ZERO,
+                Duration.ofSeconds(1), Duration.ofSeconds(5), 0));
+        for (int i = 0; i < 2 * RetryBudget.MAX_TOKENS + 2; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+
+        for (int i = 0; i < RetryBudget.MAX_TOKENS + 1; i++) {
+            assertThatThrownBy(() -> service.getTeams("jane.doe@ssb.no")).isInstanceOf(DaplaKeycloakException.class);
+        }
+        assertThat(service.stats().getRetries()).isEqualTo(RetryBudget.MAX_TOKENS);
+        assertThat(service.stats().getRetriesDenied()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldHaveManyLookupsInFlightWithoutBlockingTheCaller() throws Exception {
+        CountDownLatch respond = new CountDownLatch(1);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                respond.await(10, TimeUnit.SECONDS);
+                return new MockResponse().setBody(TEAMS_JSON);
+            }
+        });
+        MockyDaplaTeamApiService service = service(Duration.ZERO);
+
+        List<CompletableFuture<TeamsAndGroups>> lookups = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            lookups.add(service.getTeamsAndGroupsAsync("user" + i + "@ssb.no"));
+        }
+        // All requests reach the server while none has been answered, far beyond OkHttp's default of 5 per host
+        for (int i = 0; i < 40; i++) {
+            assertThat(server.takeRequest(5, TimeUnit.SECONDS)).isNotNull();
+        }
+        assertThat(lookups).noneMatch(CompletableFuture::isDone);
+
+        respond.countDown();
+        CompletableFuture.allOf(lookups.toArray(CompletableFuture[]::new)).join();
+        assertThat(lookups).allSatisfy(lookup -> assertThat(lookup.join().teams()).containsExactly("team-a", "team-b"));
+    }
+
+    @Test
+    void shouldCompleteAsyncLookupsExceptionally() {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        MockyDaplaTeamApiService service = service(Duration.ofMinutes(5));
+
+        assertThat(service.getTeamsAndGroupsAsync("unknown@ssb.no"))
+                .failsWithin(Duration.ofSeconds(5))
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(UnknownTeamApiUserException.class);
+        // From the negative cache
+        assertThat(service.getTeamsAsync("unknown@ssb.no").toCompletableFuture()).isCompletedExceptionally();
+    }
+
+    @Test
+    void cancellingALookupShouldCancelTheCallInFlight() throws Exception {
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON).setHeadersDelay(5, TimeUnit.SECONDS));
+        MockyDaplaTeamApiService service = service(Duration.ZERO);
+
+        CompletableFuture<TeamsAndGroups> lookup = service.getTeamsAndGroupsAsync("jane.doe@ssb.no");
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS)).isNotNull();
+        lookup.cancel(true);
+
+        awaitNoRunningCalls();
+        assertThat(runningCalls()).isZero();
+        assertThat(lookup).isCancelled();
+    }
+
+    @Test
+    void cancellingAMappedLookupShouldCancelTheCallInFlight() throws Exception {
+        server.enqueue(new MockResponse().setBody(TEAMS_JSON).setHeadersDelay(5, TimeUnit.SECONDS));
+        MockyDaplaTeamApiService service = service(Duration.ZERO);
+
+        CompletableFuture<List<String>> lookup = service.getTeamsAsync("jane.doe@ssb.no").toCompletableFuture();
+        assertThat(server.takeRequest(5, TimeUnit.SECONDS)).isNotNull();
+        lookup.cancel(true);
+
+        awaitNoRunningCalls();
+        assertThat(runningCalls()).isZero();
+    }
+
+    private void awaitNoRunningCalls() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (runningCalls() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private long runningCalls() {
+        return TeamApiHttpClient.get().dispatcher().runningCalls().stream()
+                .filter(call -> call.request().url().port() == server.getPort())
+                .count();
+    }
+
+    @Test
+    void backoffShouldBeExponentialWithFullJitter() {
+        RetryPolicy policy = RetryPolicy.DEFAULT;
+        assertThat(policy.backoffMillis(0, 0)).isZero();
+        assertThat(policy.backoffMillis(0, 0.999)).isEqualTo(49);
+        assertThat(policy.backoffMillis(2, 0.999)).isEqualTo(199);
+        assertThat(policy.backoffMillis(20, 0.999)).isEqualTo(999);
+    }
+
+    private static RetryPolicy retryPolicy(int maxRetries, Duration latencyBudget) {
+        return new RetryPolicy(maxRetries, Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofMillis(500),
+                latencyBudget, 1.0);
+    }
+
+    private MockyDaplaTeamApiService service(RetryPolicy retryPolicy) {
+        return new MockyDaplaTeamApiService(server.url("/").toString(), TeamApiLimits.DEFAULT,
+                TeamApiCachePolicy.of(Duration.ZERO), retryPolicy);
+    }
+
+    private MockyDaplaTeamApiService service(Duration cacheTtl) {
+        return new MockyDaplaTeamApiService(server.url("/").toString(), TeamApiLimits.DEFAULT, TeamApiCachePolicy.of(cacheTtl));
+    }
+
+}
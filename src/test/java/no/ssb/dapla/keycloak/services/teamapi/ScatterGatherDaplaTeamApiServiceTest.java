@@ -0,0 +1,135 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import no.ssb.dapla.keycloak.DaplaKeycloakException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ScatterGatherDaplaTeamApiServiceTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Test
+    void shouldMergeAndDeduplicateSources() {
+        ScatterGatherDaplaTeamApiService service = new ScatterGatherDaplaTeamApiService(List.of(
+                source("a", TIMEOUT, () -> new TeamsAndGroups(List.of("team-a", "team-b"), List.of("team-a-developers"))),
+                source("b", TIMEOUT, () -> new TeamsAndGroups(List.of("team-b", "team-c"), List.of("team-c-developers")))));
+
+        TeamsAndGroups teamsAndGroups = service.getTeamsAndGroups("jane.doe@ssb.no");
+        assertThat(teamsAndGroups.teams()).containsExactly("team-a", "team-b", "team-c");
+        assertThat(teamsAndGroups.groups()).containsExactly("team-a-developers", "team-c-developers");
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-a", "team-b", "team-c");
+    }
+
+    @Test
+    void shouldReturnPartialResultWhenSourceTimesOut() {
+        long partialResults = ScatterGatherDaplaTeamApiService.stats().getPartialResults();
+        ScatterGatherDaplaTeamApiService service = new ScatterGatherDaplaTeamApiService(List.of(
+                source("fast", TIMEOUT, () -> sleepAndGet(100, "team-fast")),
+                source("slow", Duration.ofMillis(200), () -> sleepAndGet(5_000, "team-slow")),
+                source("medium", TIMEOUT, () -> sleepAndGet(150, "team-medium"))));
+
+        long start = System.nanoTime();
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-fast", "team-medium");
+        // The sources are queried in parallel, so latency is bounded by the slow source's timeout, not the sum
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(1_000));
+        assertThat(ScatterGatherDaplaTeamApiService.stats().getPartialResults()).isEqualTo(partialResults + 1);
+        assertThat(ScatterGatherDaplaTeamApiService.stats().getSourceTimeouts()).containsKey("slow");
+    }
+
+    @Test
+    void shouldInterruptSourcesThatTimeOut() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ScatterGatherDaplaTeamApiService service = new ScatterGatherDaplaTeamApiService(List.of(
+                source("fast", TIMEOUT, () -> new TeamsAndGroups(List.of("team-fast"), List.of())),
+                source("hanging", Duration.ofMillis(50), () -> {
+                    try {
+                        Thread.sleep(60_000);
+                    }
+                    catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    return new TeamsAndGroups(List.of("team-hanging"), List.of());
+                })));
+
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-fast");
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void shouldReturnPartialResultWhenSourceFails() {
+        ScatterGatherDaplaTeamApiService service = new ScatterGatherDaplaTeamApiService(List.of(
+                source("ok", TIMEOUT, () -> new TeamsAndGroups(List.of("team-a"), List.of())),
+                source("failing", TIMEOUT, () -> {
+                    throw new DaplaKeycloakException("Boom");
+                })));
+
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-a");
+        assertThat(ScatterGatherDaplaTeamApiService.stats().getSourceFailures()).containsKey("failing");
+    }
+
+    @Test
+    void shouldTreatUnknownUserAsNoTeams() {
+        long partialResults = ScatterGatherDaplaTeamApiService.stats().getPartialResults();
+        ScatterGatherDaplaTeamApiService service = new ScatterGatherDaplaTeamApiService(List.of(
+                source("a", TIMEOUT, () -> new TeamsAndGroups(List.of("team-a"), List.of())),
+                source("unknown", TIMEOUT, () -> {
+                    throw new UnknownTeamApiUserException();
+                })));
+
+        assertThat(service.getTeams("jane.doe@ssb.no")).containsExactly("team-a");
+        assertThat(ScatterGatherDaplaTeamApiService.stats().getPartialResults()).isEqualTo(partialResults);
+    }
+
+    @Test
+    void shouldFailWhenNoSourceAnswers() {
+        ScatterGatherDaplaTeamApiService unknownEverywhere = new ScatterGatherDaplaTeamApiService(List.of(
+                source("unknown", TIMEOUT, () -> {
+                    throw new UnknownTeamApiUserException();
+                })));
+        assertThatThrownBy(() -> unknownEverywhere.getTeams("jane.doe@ssb.no")).isInstanceOf(UnknownTeamApiUserException.class);
+
+        ScatterGatherDaplaTeamApiService allSlow = new ScatterGatherDaplaTeamApiService(List.of(
+                source("slow", Duration.ofMillis(50), () -> sleepAndGet(5_000, "team-slow"))));
+        assertThatThrownBy(() -> allSlow.getTeams("jane.doe@ssb.no"))
+                .isInstanceOf(DaplaKeycloakException.class)
+                .isNotInstanceOf(UnknownTeamApiUserException.class);
+    }
+
+    private static ScatterGatherDaplaTeamApiService.Source source(String name, Duration timeout, Supplier<TeamsAndGroups> lookup) {
+        return new ScatterGatherDaplaTeamApiService.Source(name, new DaplaTeamApiService() {
+            @Override
+            public List<String> getTeams(String user) {
+                return getTeamsAndGroups(user).teams();
+            }
+
+            @Override
+            public List<String> getGroups(String user) {
+                return getTeamsAndGroups(user).groups();
+            }
+
+            @Override
+            public TeamsAndGroups getTeamsAndGroups(String user) {
+                return lookup.get();
+            }
+        }, timeout);
+    }
+
+    private static TeamsAndGroups sleepAndGet(long millis, String team) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new TeamsAndGroups(List.of(team), List.of());
+    }
+
+}
@@ -0,0 +1,68 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class TeamApiCacheTest {
+
+    private static final TeamsAndGroups TEAMS = new TeamsAndGroups(List.of("team-a"), List.of());
+
+    @Test
+    void shouldCountExpiredEntriesSeparatelyFromEvictions() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        TeamApiCache cache = new TeamApiCache(3, now::get);
+        cache.put("expiring0@ssb.no", TEAMS, null, null, 0, Duration.ofSeconds(1));
+        cache.put("expiring1@ssb.no", TEAMS, null, null, 0, Duration.ofSeconds(1));
+        cache.put("fresh@ssb.no", TEAMS, null, null, 0, Duration.ofHours(1));
+        now.addAndGet(Duration.ofSeconds(2).toMillis());
+
+        cache.put("new0@ssb.no", TEAMS, null, null, 0, Duration.ofHours(1));
+        assertThat(cache.stats().getExpirations()).isEqualTo(2);
+        assertThat(cache.stats().getEvictions()).isZero();
+
+        cache.put("new1@ssb.no", TEAMS, null, null, 0, Duration.ofHours(1));
+        cache.put("new2@ssb.no", TEAMS, null, null, 0, Duration.ofHours(1));
+        assertThat(cache.stats().getExpirations()).isEqualTo(2);
+        assertThat(cache.stats().getEvictions()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.get("fresh@ssb.no")).isNull();
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntriesInBatches() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        int maxEntries = TeamApiCache.DEFAULT_MAX_ENTRIES;
+        TeamApiCache cache = new TeamApiCache(maxEntries, now::get);
+        for (int i = 0; i < maxEntries; i++) {
+            now.incrementAndGet();
+            cache.put("user" + i + "@ssb.no", TEAMS, null, null, 0, Duration.ofHours(1));
+        }
+        now.incrementAndGet();
+        cache.touch("user0@ssb.no");
+
+        cache.put("new@ssb.no", TEAMS, null, null, 0, Duration.ofHours(1));
+        int batch = (int) (maxEntries * TeamApiCache.EVICTION_BATCH_FRACTION);
+        assertThat(cache.size()).isEqualTo(maxEntries - batch + 1);
+        assertThat(cache.stats().getEvictions()).isEqualTo(batch);
+        assertThat(cache.get("user0@ssb.no")).isNotNull();
+        assertThat(cache.get("user1@ssb.no")).isNull();
+        assertThat(cache.get("user" + (batch + 1) + "@ssb.no")).isNotNull();
+
+        // A full cache must not be swept on every put
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < maxEntries; i++) {
+                now.incrementAndGet();
+                cache.put("other" + i + "@ssb.no", TEAMS, null, null, 0, Duration.ofHours(1));
+            }
+        });
+        assertThat(cache.size()).isLessThanOrEqualTo(maxEntries);
+        assertThat(cache.stats().getEvictions()).isEqualTo(11L * batch);
+    }
+
+}
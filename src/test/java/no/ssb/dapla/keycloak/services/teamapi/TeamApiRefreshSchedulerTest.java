@@ -0,0 +1,105 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TeamApiRefreshSchedulerTest {
+
+    private static final TeamsAndGroups TEAMS = new TeamsAndGroups(List.of("team-a"), List.of());
+    private static final Duration TTL = Duration.ofSeconds(100);
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final Set<String> refreshed = ConcurrentHashMap.newKeySet();
+    private TeamApiCache cache;
+    private TeamApiRefreshScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        cache = new TeamApiCache(100, now::get);
+        scheduler = new TeamApiRefreshScheduler(cache, now::get);
+        RefreshAheadPolicy policy = new RefreshAheadPolicy(0.8, 2);
+        cache.setRefreshAheadPolicy(policy);
+        scheduler.configure(policy, refreshed::add);
+    }
+
+    @Test
+    void refreshAtShouldBeJitteredBetweenFractionAndRemainingHalf() {
+        RefreshAheadPolicy policy = new RefreshAheadPolicy(0.8, 10);
+        assertThat(policy.refreshAfterMillis(100_000, 0)).isEqualTo(80_000);
+        assertThat(policy.refreshAfterMillis(100_000, 0.999)).isBetween(89_000L, 90_000L);
+        assertThat(RefreshAheadPolicy.DISABLED.refreshAfterMillis(100_000, 0.5)).isEqualTo(100_000);
+    }
+
+    @Test
+    void shouldOnlyRefreshActiveUsersWhenDue() throws InterruptedException {
+        cache.put("active@ssb.no", TEAMS, null, null, 0, TTL);
+        cache.put("inactive@ssb.no", TEAMS, null, null, 0, TTL);
+        now.addAndGet(1000);
+        cache.touch("active@ssb.no");
+
+        assertThat(scheduler.tick()).isZero();
+
+        now.addAndGet(TTL.toMillis() * 9 / 10);
+        assertThat(scheduler.tick()).isEqualTo(1);
+        waitForRefreshes(1);
+        assertThat(refreshed).containsExactly("active@ssb.no");
+        assertThat(cache.stats().getRefreshesAhead()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRateLimitRefreshes() {
+        for (int i = 0; i < 5; i++) {
+            cache.put("user" + i + "@ssb.no", TEAMS, null, null, 0, TTL);
+        }
+        now.addAndGet(1000);
+        for (int i = 0; i < 5; i++) {
+            cache.touch("user" + i + "@ssb.no");
+        }
+        now.addAndGet(TTL.toMillis());
+
+        assertThat(scheduler.tick()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldOnlyQueueUsersLookedUpSinceFetched() {
+        for (int i = 0; i < 1000; i++) {
+            cache.put("user" + i + "@ssb.no", TEAMS, null, null, 0, TTL);
+        }
+        now.addAndGet(1000);
+        cache.touch("user0@ssb.no");
+        assertThat(cache.refreshQueueSize()).isEqualTo(1);
+
+        now.addAndGet(TTL.toMillis());
+        assertThat(scheduler.tick()).isEqualTo(1);
+        assertThat(cache.refreshQueueSize()).isZero();
+        assertThat(scheduler.tick()).isZero();
+    }
+
+    @Test
+    void shouldDropQueuedUsersWhoseEntryWasReplaced() {
+        cache.put("jane.doe@ssb.no", TEAMS, null, null, 0, TTL);
+        now.addAndGet(1000);
+        cache.touch("jane.doe@ssb.no");
+        cache.put("jane.doe@ssb.no", TEAMS, null, null, 0, TTL);
+
+        now.addAndGet(TTL.toMillis() * 2);
+        assertThat(scheduler.tick()).isZero();
+        assertThat(cache.refreshQueueSize()).isZero();
+    }
+
+    private void waitForRefreshes(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (refreshed.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package no.ssb.dapla.keycloak.services.teamapi;
+
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TeamApiResponseAdapterTest {
+
+    @Test
+    void shouldExtractTeamsAndGroupsAndSkipUnknownFields() throws IOException {
+        TeamsAndGroups result = parse(TeamApiLimits.DEFAULT, """
+                {
+                  "user": {"name": "Jane Doe", "tags": [1, 2, {"nested": true}]},
+                  "teams": ["team-a", null, 42, "team-b"],
+                  "groups": ["team-a-developers"],
+                  "_links": {"self": {"href": "https://example.com"}}
+                }""");
+
+        assertThat(result.teams()).containsExactly("team-a", "team-b");
+        assertThat(result.groups()).containsExactly("team-a-developers");
+    }
+
+    @Test
+    void missingOrNullFieldsShouldBeEmpty() throws IOException {
+        TeamsAndGroups result = parse(TeamApiLimits.DEFAULT, """
+                {"teams": null}""");
+
+        assertThat(result.teams()).isEmpty();
+        assertThat(result.groups()).isEmpty();
+    }
+
+    @Test
+    void shouldRejectTooManyElements() {
+        assertThatThrownBy(() -> parse(new TeamApiLimits(1024, 2), """
+                {"teams": ["team-a", "team-b", "team-c"]}"""))
+                .isInstanceOf(TeamApiResponseTooLargeException.class)
+                .hasMessageContaining("more than 2 teams");
+    }
+
+    @Test
+    void shouldRejectTooManyBytes() {
+        String json = "{\"ignored\": \"" + "x".repeat(1000) + "\", \"teams\": []}";
+        assertThatThrownBy(() -> parse(new TeamApiLimits(100, 10), json))
+                .isInstanceOf(TeamApiResponseTooLargeException.class)
+                .hasMessageContaining("exceeds 100 bytes");
+    }
+
+    @Test
+    void shouldWriteWhatItReads() throws IOException {
+        TeamApiResponseAdapter adapter = TeamApiResponseAdapter.forLimits(TeamApiLimits.DEFAULT);
+        TeamsAndGroups teamsAndGroups = new TeamsAndGroups(List.of("team-a", "team-\"b\""), List.of("team-a-developers"));
+        Buffer buffer = new Buffer();
+        adapter.write(teamsAndGroups, buffer);
+
+        assertThat(buffer.snapshot().utf8()).isEqualTo("""
+                {"teams":["team-a","team-\\"b\\""],"groups":["team-a-developers"]}""");
+        assertThat(adapter.parse(buffer)).isEqualTo(teamsAndGroups);
+    }
+
+    @Test
+    void adaptersShouldBeCachedPerLimits() {
+        assertThat(TeamApiResponseAdapter.forLimits(new TeamApiLimits(100, 10)))
+                .isSameAs(TeamApiResponseAdapter.forLimits(new TeamApiLimits(100, 10)));
+    }
+
+    private static TeamsAndGroups parse(TeamApiLimits limits, String json) throws IOException {
+        return TeamApiResponseAdapter.forLimits(limits).parse(new Buffer().writeUtf8(json));
+    }
+
+}
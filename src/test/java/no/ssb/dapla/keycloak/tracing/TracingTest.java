@@ -0,0 +1,92 @@
+package no.ssb.dapla.keycloak.tracing;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import no.ssb.dapla.keycloak.mappers.TokenMapperFixture;
+import no.ssb.dapla.keycloak.mappers.teams.TeamsMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.ProtocolMapperModel;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TracingTest {
+
+    private final InMemorySpanExporter exporter = InMemorySpanExporter.create();
+    private MockWebServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Tracing.setOpenTelemetry(OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder()
+                        .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+                        .build())
+                .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
+                .build());
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Tracing.setOpenTelemetry(null);
+        server.shutdown();
+    }
+
+    @Test
+    void shouldTraceMapperAndTeamApiCall() throws Exception {
+        server.enqueue(new MockResponse().setBody("""
+                {"teams": ["team-a"], "groups": []}"""));
+
+        ProtocolMapperModel model = TokenMapperFixture.teamApiModel(server.url("/").toString(), Map.of(
+                TeamsMapper.ConfigPropertyKey.MAX_RETRIES, "0"
+        ));
+        TokenMapperFixture.transformAccessToken(new TeamsMapper(), model);
+
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        assertThat(spans).hasSize(2);
+        SpanData httpSpan = spans.get(0);
+        SpanData mapperSpan = spans.get(1);
+
+        assertThat(mapperSpan.getName()).isEqualTo("Map claim");
+        assertThat(mapperSpan.getAttributes().get(AttributeKey.stringKey("dapla.mapper.provider_id"))).isEqualTo(TeamsMapper.PROVIDER_ID);
+        assertThat(mapperSpan.getAttributes().get(AttributeKey.stringKey("dapla.mapper.claim_name"))).isEqualTo("dapla.teams");
+        assertThat(mapperSpan.getAttributes().get(AttributeKey.stringKey("dapla.mapper.token_type"))).isEqualTo("AccessToken");
+        assertThat(mapperSpan.getAttributes().get(AttributeKey.stringKey("dapla.mapper.outcome"))).isEqualTo("mapped");
+
+        assertThat(httpSpan.getKind()).isEqualTo(SpanKind.CLIENT);
+        assertThat(httpSpan.getParentSpanId()).isEqualTo(mapperSpan.getSpanId());
+        assertThat(httpSpan.getAttributes().get(AttributeKey.longKey("http.status_code"))).isEqualTo(200);
+        assertThat(httpSpan.getAttributes().get(AttributeKey.stringKey("http.url"))).doesNotContain("jane.doe");
+
+        String traceparent = server.takeRequest().getHeader("traceparent");
+        assertThat(traceparent).isEqualTo("00-" + httpSpan.getTraceId() + "-" + httpSpan.getSpanId() + "-01");
+    }
+
+    @Test
+    void shouldRecordOutcomeWhenClaimCannotBeDeduced() {
+        ProtocolMapperModel model = TokenMapperFixture.accessTokenModel(Map.of(
+                TeamsMapper.ConfigPropertyKey.API_IMPL, "Dummy"
+        ));
+        TokenMapperFixture.transformAccessToken(new TeamsMapper(), model, TokenMapperFixture.userSession(null));
+
+        assertThat(exporter.getFinishedSpanItems()).singleElement()
+                .satisfies(span -> assertThat(span.getAttributes().get(AttributeKey.stringKey("dapla.mapper.outcome")))
+                        .isEqualTo("not_deduced"));
+    }
+
+}
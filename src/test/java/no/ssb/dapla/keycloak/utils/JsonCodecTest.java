@@ -0,0 +1,62 @@
+package no.ssb.dapla.keycloak.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import no.ssb.dapla.keycloak.services.teamapi.TeamsAndGroups;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonCodecTest {
+
+    @Test
+    void shouldRoundTripRecords() {
+        JsonCodec<TeamsAndGroups> codec = JsonCodec.of(TeamsAndGroups.class);
+        TeamsAndGroups value = new TeamsAndGroups(List.of("team-a"), List.of("team-a-developers"));
+
+        String json = codec.write(value);
+
+        assertThat(json).isEqualTo("{\"teams\":[\"team-a\"],\"groups\":[\"team-a-developers\"]}");
+        assertThat(codec.read(json)).isEqualTo(value);
+        assertThat(codec.writePretty(value)).contains("\n  \"teams\" : [ \"team-a\" ]");
+    }
+
+    @Test
+    void shouldReadFromSourceAndWriteToStreamWithoutClosing() throws IOException {
+        JsonCodec<Map<String, Integer>> codec = JsonCodec.of(new TypeReference<>() {});
+        Buffer source = new Buffer().writeUtf8("{\"a\":1}");
+
+        assertThat(codec.read(source)).containsEntry("a", 1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                throw new AssertionError("Stream should not be closed");
+            }
+        };
+        codec.write(out, Map.of("b", 2));
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("{\"b\":2}");
+    }
+
+    @Test
+    void shouldBeCachedPerType() {
+        assertThat(JsonCodec.of(TeamsAndGroups.class)).isSameAs(JsonCodec.of(TeamsAndGroups.class));
+        assertThat(JsonCodec.of(new TypeReference<List<String>>() {}))
+                .isSameAs(JsonCodec.of(new TypeReference<List<String>>() {}));
+    }
+
+    @Test
+    void shouldWrapParseErrors() {
+        assertThatThrownBy(() -> JsonCodec.of(TeamsAndGroups.class).read("not json"))
+                .isInstanceOf(Json.JsonException.class)
+                .hasMessageContaining("TeamsAndGroups");
+    }
+
+}
@@ -68,4 +68,17 @@ public class JsonTest {
                 .isEqualTo("{\n  \"key\" : \"value\"\n}");
     }
 
+    @Test
+    void testPrettyFromWithStringKeepsNullsAndBigNumbers() {
+        String json = "{\"n\":1.5,\"big\":12345678901234567890,\"nothing\":null,\"list\":[]}";
+
+        assertThat(Json.prettyFrom(json)).isEqualTo("""
+                {
+                  "n" : 1.5,
+                  "big" : 12345678901234567890,
+                  "nothing" : null,
+                  "list" : [ ]
+                }""");
+    }
+
 }